@@ -0,0 +1,36 @@
+package benchmark;
+
+/**
+ * One benchmark run by BenchmarkRunner: an operation that is called over
+ * and over, with optional set-up and tear-down around all the calls.
+ * The operation returns a value that depends on its work, which the
+ * runner keeps, so that the JIT cannot leave the work out. A search also
+ * counts its nodes, which the runner reports per second.
+ *
+ * @author steven
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setUp() {
+    }
+
+    public abstract int run();
+
+    // the nodes searched by all the calls so far, for a benchmark of a search
+    public long getNodes() {
+        return 0;
+    }
+
+    public void tearDown() {
+    }
+}
@@ -0,0 +1,423 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of Benchmarks and reports, for each, the operations
+ * per second and the memory it allocates, per second and per operation,
+ * with the collections that caused, and for a search, the nodes per
+ * second. Then it reports the ratios of Benchmarks.RATIOS: how fast one
+ * search is compared with another, scored like a benchmark.
+ *
+ * Each benchmark is run for a number of warm-up iterations, so that the
+ * JIT has compiled it, and then measured over a number of iterations of a
+ * fixed time. The score is the mean over the measured iterations, and
+ * the error half the width of its 99.9% confidence interval. Allocation
+ * is counted by the JVM for the benchmark thread alone (see
+ * com.sun.management.ThreadMXBean); where it cannot, it is left out.
+ *
+ * Each benchmark runs in a JVM of its own, started with the arguments of
+ * this one. In a shared JVM, the JIT would compile the call of run and
+ * the code the benchmarks share for whichever ran first, and the later
+ * ones would score by the order they ran in. The system property
+ * quoridor.benchInProcess runs them all in this JVM instead.
+ *
+ * The results can be written to a CSV file, and compared with those of an
+ * earlier run: a benchmark is a regression when its score dropped by more
+ * than the tolerance, or it allocates more per operation. The runner then
+ * exits with status 1.
+ *
+ * Usage: java benchmark.BenchmarkRunner [filter [csvFile [baselineCsvFile]]]
+ * where filter is a regular expression that selects benchmarks by name.
+ * The system properties quoridor.benchWarmups, quoridor.benchIterations
+ * and quoridor.benchMillis set the number of iterations and their length,
+ * and quoridor.benchTolerance the tolerance in percent; the forked JVMs
+ * get them along with the other arguments of this one.
+ *
+ * @author steven
+ */
+public class BenchmarkRunner {
+
+    public static final int DEFAULT_WARMUPS = 3;
+    public static final int DEFAULT_ITERATIONS = 5;
+    public static final int DEFAULT_MILLIS = 1000;
+    public static final int DEFAULT_TOLERANCE = 10;
+
+    // the first argument of a forked JVM, followed by the name of the one benchmark it runs
+    private static final String FORK = "-fork";
+
+    private static final String CSV_HEADER = "benchmark,opsPerSecond,error,bytesPerOp,allocMBPerSecond,gcCount,gcMillis,"
+            + "nodesPerSecond";
+
+    // Student's t for a two-sided 99.9% interval, by degrees of freedom; normal beyond
+    private static final double[] T_999 = {Double.NaN, 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+    private static final double Z_999 = 3.29;
+
+    // the time is read after every batch of calls, which grows until it takes this part of an iteration
+    private static final int BATCHES_PER_ITERATION = 100;
+
+    private final int warmups;
+    private final int iterations;
+    private final long iterationTime;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported;
+
+    // the results of the calls, kept so that none of their work can be left out
+    private long sink;
+    private static volatile long blackhole;
+
+    public BenchmarkRunner(int warmups, int iterations, long millis) {
+        this.warmups = warmups;
+        this.iterations = Math.max(1, iterations);
+        iterationTime = millis * 1000000;
+        boolean supported = false;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                supported = true;
+            }
+        }
+        allocationSupported = supported;
+    }
+
+    public Result run(Benchmark benchmark) {
+        benchmark.setUp();
+        try {
+            for (int i = 0; i < warmups; i++) {
+                iteration(benchmark);
+            }
+            Result result = new Result(benchmark.getName());
+            for (int i = 0; i < iterations; i++) {
+                result.add(iteration(benchmark));
+            }
+            return result;
+        } finally {
+            benchmark.tearDown();
+            blackhole = sink;
+        }
+    }
+
+    /*
+     * Calls the benchmark for the iteration time, and returns the calls
+     * made, the time they took, the bytes allocated and the collections,
+     * with the time of the collections in milliseconds, and the nodes
+     * searched.
+     */
+    private long[] iteration(Benchmark benchmark) {
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = allocatedBytes();
+        long nodes = benchmark.getNodes();
+        long start = System.nanoTime();
+        long end = start + iterationTime;
+        long calls = 0;
+        long batch = 1;
+        long now = start;
+        while (now < end) {
+            long batchStart = now;
+            for (long c = 0; c < batch; c++) {
+                sink += benchmark.run();
+            }
+            calls += batch;
+            now = System.nanoTime();
+            if (now - batchStart < iterationTime / BATCHES_PER_ITERATION) {
+                batch *= 2;
+            }
+        }
+        long elapsed = now - start;
+        return new long[]{calls, elapsed, allocatedBytes() - allocated, gcCount() - gcCount, gcTime() - gcTime,
+                benchmark.getNodes() - nodes};
+    }
+
+    private long allocatedBytes() {
+        if (!allocationSupported) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    // the measured iterations of one benchmark
+    public class Result {
+
+        private final String name;
+        private final List<Double> scores = new ArrayList<Double>();
+        private long calls;
+        private long time;
+        private long allocated;
+        private long gcCount;
+        private long gcTime;
+        private long nodes;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        void add(long[] iteration) {
+            scores.add(iteration[0] * 1e9 / iteration[1]);
+            calls += iteration[0];
+            time += iteration[1];
+            allocated += iteration[2];
+            gcCount += iteration[3];
+            gcTime += iteration[4];
+            nodes += iteration[5];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getScore() {
+            double sum = 0;
+            for (double s : scores) {
+                sum += s;
+            }
+            return sum / scores.size();
+        }
+
+        public double getError() {
+            int n = scores.size();
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = getScore();
+            double squares = 0;
+            for (double s : scores) {
+                squares += (s - mean) * (s - mean);
+            }
+            double t = n - 1 < T_999.length ? T_999[n - 1] : Z_999;
+            return t * Math.sqrt(squares / (n - 1) / n);
+        }
+
+        // NaN when the JVM cannot count the allocation
+        public double getBytesPerOp() {
+            return allocationSupported ? (double) allocated / calls : Double.NaN;
+        }
+
+        public double getAllocationRate() {
+            return allocationSupported ? allocated * 1e9 / time / (1 << 20) : Double.NaN;
+        }
+
+        // NaN for a benchmark that does not search
+        public double getNodesPerSecond() {
+            return nodes == 0 ? Double.NaN : nodes * 1e9 / time;
+        }
+
+        public String toString() {
+            return String.format("%-36s %5d %14.1f %12.1f %10.2f %12.1f %6d %8d %12.0f", name, scores.size(), getScore(),
+                    getError(), getAllocationRate(), getBytesPerOp(), gcCount, gcTime, getNodesPerSecond());
+        }
+
+        String toCsv() {
+            // the file is read back by readBaseline, whatever the locale
+            return String.format(Locale.ROOT, "%s,%.1f,%.1f,%.1f,%.2f,%d,%d,%.0f", name, getScore(), getError(),
+                    getBytesPerOp(), getAllocationRate(), gcCount, gcTime, getNodesPerSecond());
+        }
+    }
+
+    /*
+     * Reads the score and bytes per operation of each benchmark from the
+     * CSV file of an earlier run.
+     */
+    private static Map<String, double[]> readBaseline(String file) throws IOException {
+        Map<String, double[]> baseline = new HashMap<String, double[]>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();
+            while ((line = in.readLine()) != null) {
+                double[] result = parse(line);
+                if (result != null) {
+                    baseline.put(line.substring(0, line.indexOf(',')), result);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return baseline;
+    }
+
+    /*
+     * The score, bytes per operation and nodes per second in a line of
+     * the CSV file, or null if it has none. Files written before the
+     * nodes were counted have no nodes per second, which reads as NaN.
+     */
+    private static double[] parse(String line) {
+        String[] fields = line.split(",");
+        if (fields.length < 4) {
+            return null;
+        }
+        return new double[]{Double.parseDouble(fields[1]), Double.parseDouble(fields[3]),
+                fields.length < 8 ? Double.NaN : Double.parseDouble(fields[7])};
+    }
+
+    /*
+     * Runs the benchmark in a new JVM, and returns the line of the table
+     * and the line of the CSV file that it printed.
+     */
+    private static String[] fork(String name) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkRunner.class.getName());
+        command.add(FORK);
+        command.add(name);
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        int status;
+        try {
+            status = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            throw new IOException("interrupted while running " + name, e);
+        }
+        if (status != 0 || lines.size() != 2) {
+            throw new IOException("the JVM running " + name + " failed with status " + status);
+        }
+        return lines.toArray(new String[2]);
+    }
+
+    // a description of how the result fell behind the baseline, or null if it did not
+    private static String regression(String name, double[] result, double[] baseline, double tolerance) {
+        if (baseline == null) {
+            return null;
+        }
+        if (result[0] < baseline[0] * (1 - tolerance / 100)) {
+            return String.format("%s: score %.4g, %.1f%% below the baseline %.4g",
+                    name, result[0], 100 * (1 - result[0] / baseline[0]), baseline[0]);
+        }
+        // rounding and the odd lazily allocated object aside
+        if (result[1] > baseline[1] * (1 + tolerance / 100) + 1) {
+            return String.format("%s: %.1f bytes/op, up from %.1f", name, result[1], baseline[1]);
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner(Integer.getInteger("quoridor.benchWarmups", DEFAULT_WARMUPS),
+                Integer.getInteger("quoridor.benchIterations", DEFAULT_ITERATIONS),
+                Integer.getInteger("quoridor.benchMillis", DEFAULT_MILLIS));
+        if (args.length == 2 && args[0].equals(FORK)) {
+            for (Benchmark benchmark : Benchmarks.all()) {
+                if (benchmark.getName().equals(args[1])) {
+                    Result result = runner.run(benchmark);
+                    System.out.println(result);
+                    System.out.println(result.toCsv());
+                    return;
+                }
+            }
+            System.err.println("No benchmark " + args[1]);
+            System.exit(2);
+        }
+        Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+        double tolerance = Integer.getInteger("quoridor.benchTolerance", DEFAULT_TOLERANCE);
+        boolean inProcess = Boolean.getBoolean("quoridor.benchInProcess");
+        // read before the CSV file is opened, which may be the same file
+        Map<String, double[]> baseline = args.length > 2 ? readBaseline(args[2]) : new HashMap<String, double[]>();
+        PrintWriter csv = null;
+        if (args.length > 1) {
+            csv = new PrintWriter(new FileWriter(args[1]));
+            csv.println(CSV_HEADER);
+        }
+
+        System.out.printf("%-36s %5s %14s %12s %10s %12s %6s %8s %12s%n", "Benchmark", "Cnt", "Score ops/s", "Error",
+                "Alloc MB/s", "Alloc B/op", "GCs", "GC ms", "Nodes/s");
+        List<String> regressions = new ArrayList<String>();
+        Map<String, double[]> results = new HashMap<String, double[]>();
+        try {
+            for (Benchmark benchmark : Benchmarks.all()) {
+                String name = benchmark.getName();
+                if (!filter.matcher(name).find()) {
+                    continue;
+                }
+                String[] lines;
+                if (inProcess) {
+                    Result result = runner.run(benchmark);
+                    lines = new String[]{result.toString(), result.toCsv()};
+                } else {
+                    lines = fork(name);
+                }
+                System.out.println(lines[0]);
+                if (csv != null) {
+                    csv.println(lines[1]);
+                    csv.flush();
+                }
+                results.put(name, parse(lines[1]));
+                String regression = regression(name, results.get(name), baseline.get(name), tolerance);
+                if (regression != null) {
+                    regressions.add(regression);
+                }
+            }
+            // the score of a ratio is the nodes per second of one benchmark over those of the other
+            for (String[] ratio : Benchmarks.RATIOS) {
+                if (!results.containsKey(ratio[1]) || !results.containsKey(ratio[2])) {
+                    continue;
+                }
+                double score = results.get(ratio[1])[2] / results.get(ratio[2])[2];
+                System.out.printf("%-36s %5s %14.3f%n", ratio[0], "", score);
+                if (csv != null) {
+                    csv.println(String.format(Locale.ROOT, "%s,%.4f,NaN,NaN,NaN,0,0,NaN", ratio[0], score));
+                    csv.flush();
+                }
+                String regression = regression(ratio[0], new double[]{score, Double.NaN}, baseline.get(ratio[0]),
+                        tolerance);
+                if (regression != null) {
+                    regressions.add(regression);
+                }
+            }
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("Regressions:");
+            for (String regression : regressions) {
+                System.out.println("  " + regression);
+            }
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package benchmark;
+
+import moves.MoveCode;
+import moves.MoveList;
+import moves.WallMove;
+import players.MonteCarloSearch;
+import players.SearchEngine;
+import quoridor.DistanceCache;
+import quoridor.GameState2P;
+import quoridor.Wall;
+import transpositiontable.TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of the board and search hot paths, over a fixed set of
+ * positions on the standard 9x9 board with 10 walls each: the start, an
+ * opening, a middle game and an endgame with few walls left.
+ *
+ * The searches are also run on the 5x5 board with 5 walls each, from the
+ * same stages of the game, and the runner reports the nodes per second on
+ * 9x9 as a fraction of those on 5x5 (see RATIOS), which the baseline
+ * check watches like any score. The larger board has many more walls to
+ * try, and when this was written, its search ran at about a third of the
+ * speed of the smaller one.
+ *
+ * The searches use the engine the way each player sets it up, with one
+ * thread, a fixed depth instead of a time limit, and neither opening book
+ * nor tablebase, so that every run does the same work. The Monte Carlo
+ * search gets a fixed number of playouts instead.
+ *
+ * @author steven
+ */
+public class Benchmarks {
+
+    /*
+     * The positions as the moves that lead to them from the start, the
+     * players taking turns from player 0: u, d, l and r step the pawn up,
+     * down, left or right, hR,C and vR,C place a wall with its start at
+     * row R and column C.
+     */
+    static final String[][] POSITIONS = {
+            {"start", ""},
+            {"opening", "u d u d h6,4 h3,4 l l u d"},
+            {"middlegame", "u d u d h6,4 h3,4 l l u d h5,2 h4,2 v4,4 v2,3 r l h4,6 h6,1 u l"},
+            {"endgame", "u d u d h6,4 h3,4 l l u d h5,2 h4,2 v4,4 v2,3 r l h4,6 h6,1 u l"
+                    + " h3,0 h7,6 v1,6 v6,2 u d h2,7 h8,2 r d v5,7 h1,2 r"},
+    };
+
+    static final int BOARD_SIZE = 9;
+    static final int WALLS_PER_PLAYER = 10;
+
+    static final String[][] SMALL_POSITIONS = {
+            {"start", ""},
+            {"opening", "u d h3,1 h1,2 l r"},
+            {"middlegame", "u d h3,1 h1,2 l r v1,3 v2,1 u d"},
+            {"endgame", "u d h3,1 h1,2 l r v1,3 v2,1 u d h3,3 v3,2 r d h1,0 v0,2"},
+    };
+
+    static final int SMALL_BOARD_SIZE = 5;
+    static final int SMALL_WALLS_PER_PLAYER = 5;
+
+    // the name a search benchmark has on the small board is the one on the large board with this added
+    static final String SMALL = ".5x5";
+
+    // the depth of the players' searches, in plies from the root
+    static final int BASIC_DEPTH = 4;
+    static final int SEARCH_DEPTH = 5;
+    // deeper on the small board, for searches of about the same size
+    static final int SMALL_BASIC_DEPTH = 6;
+    static final int SMALL_SEARCH_DEPTH = 7;
+    static final int MONTE_CARLO_PLAYOUTS = 2000;
+
+    static final int TABLE_MEGABYTES = 4;
+    static final int TABLE_KEYS = 1 << 16;
+
+    // the distance cache for the uncached benchmark, too small to hold the walls it cycles through
+    static final int SMALL_CACHE = 8;
+
+    private static final GameState2P[] states = new GameState2P[POSITIONS.length];
+    // the player to move in each position
+    private static final int[] sides = new int[POSITIONS.length];
+    private static final GameState2P[] smallStates = new GameState2P[SMALL_POSITIONS.length];
+    private static final int[] smallSides = new int[SMALL_POSITIONS.length];
+
+    static {
+        setUp(POSITIONS, BOARD_SIZE, WALLS_PER_PLAYER, states, sides);
+        setUp(SMALL_POSITIONS, SMALL_BOARD_SIZE, SMALL_WALLS_PER_PLAYER, smallStates, smallSides);
+    }
+
+    private static void setUp(String[][] positions, int size, int wallsPerPlayer, GameState2P[] states, int[] sides) {
+        for (int i = 0; i < positions.length; i++) {
+            GameState2P state = new GameState2P(size, size, wallsPerPlayer);
+            String moves = positions[i][1].trim();
+            int side = 0;
+            if (moves.length() > 0) {
+                for (String move : moves.split(" ")) {
+                    state = play(state, side, move);
+                    if (state == null) {
+                        throw new IllegalStateException("illegal move " + move + " in position " + positions[i][0]
+                                + " on the " + size + "x" + size + " board");
+                    }
+                    side = 1 - side;
+                }
+            }
+            states[i] = state;
+            sides[i] = side;
+        }
+    }
+
+    /*
+     * The ratios the runner reports: their names, and the benchmarks
+     * whose nodes per second are divided.
+     */
+    static final String[][] RATIOS = {
+            {"search.BasicComputerPlayer.9x9/5x5", "search.BasicComputerPlayer", "search.BasicComputerPlayer" + SMALL},
+            {"search.ComputerPlayer.9x9/5x5", "search.ComputerPlayer", "search.ComputerPlayer" + SMALL},
+            {"search.AspirationPlayer.9x9/5x5", "search.AspirationPlayer", "search.AspirationPlayer" + SMALL},
+            {"search.TranspositionPlayer.9x9/5x5", "search.TranspositionPlayer", "search.TranspositionPlayer" + SMALL},
+    };
+
+    private static GameState2P play(GameState2P state, int side, String move) {
+        switch (move.charAt(0)) {
+            case 'u':
+                return state.moveUp(side);
+            case 'd':
+                return state.moveDown(side);
+            case 'l':
+                return state.moveLeft(side);
+            case 'r':
+                return state.moveRight(side);
+            default:
+                String[] point = move.substring(1).split(",");
+                Wall wall = new Wall(Integer.parseInt(point[0]), Integer.parseInt(point[1]), move.charAt(0) == 'h');
+                return state.placeWall(side, wall);
+        }
+    }
+
+    public static List<Benchmark> all() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("GameState2P.getLegalMoves") {
+            private int i;
+
+            public int run() {
+                int p = (i = (i + 1) % states.length);
+                return GameState2P.getLegalMoves(states[p], sides[p]).size();
+            }
+        });
+        benchmarks.add(new Benchmark("GameState2P.generateMoves") {
+            private final MoveList moves = new MoveList();
+            private int i;
+
+            public int run() {
+                int p = (i = (i + 1) % states.length);
+                moves.clear();
+                states[p].generateMoves(sides[p], moves);
+                return moves.size();
+            }
+        });
+        benchmarks.add(new Benchmark("GameState2P.placeWall") {
+            private final List<GameState2P> wallStates = new ArrayList<GameState2P>();
+            private final List<Wall> walls = new ArrayList<Wall>();
+            private final List<Integer> wallSides = new ArrayList<Integer>();
+            private int i;
+
+            public void setUp() {
+                // every legal wall of the player to move in every position
+                for (int p = 0; p < states.length; p++) {
+                    MoveList moves = new MoveList();
+                    states[p].generateMoves(sides[p], moves);
+                    for (int m = 0; m < moves.size(); m++) {
+                        int move = moves.get(m);
+                        if (MoveCode.isWall(move)) {
+                            wallStates.add(states[p]);
+                            walls.add(((WallMove) MoveCode.decode(move, sides[p], states[p].getWidth())).getWall());
+                            wallSides.add(sides[p]);
+                        }
+                    }
+                }
+            }
+
+            public int run() {
+                int w = (i = (i + 1) % walls.size());
+                GameState2P next = wallStates.get(w).placeWall(wallSides.get(w), walls.get(w));
+                return next == null ? 0 : next.getDistanceToGoal(0);
+            }
+        });
+        benchmarks.add(new WallBenchmark("GameState2P.pushPopWall", false));
+        benchmarks.add(new WallBenchmark("GameState2P.initDistances", true));
+        benchmarks.add(new Benchmark("GameState2P.evaluateState") {
+            private int i;
+
+            public int run() {
+                int p = (i = (i + 1) % states.length);
+                return (int) states[p].evaluateState(sides[p]);
+            }
+        });
+        benchmarks.add(new Benchmark("GameState2P.hashCode") {
+            private int i;
+
+            public int run() {
+                return states[(i = (i + 1) % states.length)].hashCode();
+            }
+        });
+        benchmarks.add(new Benchmark("GameState2P.equals") {
+            private final GameState2P[] copies = new GameState2P[states.length];
+            private int i;
+
+            public void setUp() {
+                for (int p = 0; p < states.length; p++) {
+                    copies[p] = new GameState2P(states[p]);
+                }
+            }
+
+            public int run() {
+                int p = (i = (i + 1) % states.length);
+                return states[p].equals(copies[p]) ? 1 : 0;
+            }
+        });
+        benchmarks.add(new TableBenchmark("TranspositionTable.store", true));
+        benchmarks.add(new TableBenchmark("TranspositionTable.probe", false));
+        addSearches(benchmarks, "", BASIC_DEPTH, SEARCH_DEPTH, states, sides);
+        addSearches(benchmarks, SMALL, SMALL_BASIC_DEPTH, SMALL_SEARCH_DEPTH, smallStates, smallSides);
+        benchmarks.add(new Benchmark("search.MonteCarloPlayer") {
+            private final MonteCarloSearch search = new MonteCarloSearch();
+
+            public void setUp() {
+                search.setTimeLimit(0, TimeUnit.NANOSECONDS);
+                search.setPlayoutLimit(MONTE_CARLO_PLAYOUTS);
+                search.setTablebase(null);
+            }
+
+            public int run() {
+                int moves = 0;
+                for (int p = 0; p < states.length; p++) {
+                    moves ^= search.search(states[p], sides[p]);
+                }
+                return moves;
+            }
+        });
+        return benchmarks;
+    }
+
+    private static void addSearches(List<Benchmark> benchmarks, String suffix, int basicDepth, int depth,
+                                    GameState2P[] states, int[] sides) {
+        SearchBenchmark basic = new SearchBenchmark("search.BasicComputerPlayer" + suffix, basicDepth, 0, false,
+                states, sides);
+        basic.engine.setKillersAndHistory(false);
+        basic.engine.setLateMoveReductions(false);
+        basic.engine.setFutilityPruning(false);
+        benchmarks.add(basic);
+        benchmarks.add(new SearchBenchmark("search.ComputerPlayer" + suffix, depth, 0, false, states, sides));
+        benchmarks.add(new SearchBenchmark("search.AspirationPlayer" + suffix, depth, 50, false, states, sides));
+        benchmarks.add(new SearchBenchmark("search.TranspositionPlayer" + suffix, depth, 0, true, states, sides));
+    }
+
+    /*
+     * Places and removes every legal wall in turn, the way the search
+     * does. With the distance cache too small to hold them, every wall
+     * derives its distance tables anew.
+     */
+    private static class WallBenchmark extends Benchmark {
+
+        private final boolean uncached;
+        private final GameState2P[] working = new GameState2P[states.length];
+        private final List<Integer> positions = new ArrayList<Integer>();
+        private final List<Integer> moves = new ArrayList<Integer>();
+        private DistanceCache cache;
+        private int i;
+
+        WallBenchmark(String name, boolean uncached) {
+            super(name);
+            this.uncached = uncached;
+        }
+
+        public void setUp() {
+            for (int p = 0; p < states.length; p++) {
+                working[p] = new GameState2P(states[p]);
+                MoveList list = new MoveList();
+                states[p].generateMoves(sides[p], list);
+                for (int m = 0; m < list.size(); m++) {
+                    if (MoveCode.isWall(list.get(m))) {
+                        positions.add(p);
+                        moves.add(list.get(m));
+                    }
+                }
+            }
+            cache = GameState2P.getDistanceCache();
+            if (uncached) {
+                GameState2P.setDistanceCache(new DistanceCache(SMALL_CACHE));
+            }
+        }
+
+        public int run() {
+            int w = (i = (i + 1) % moves.size());
+            GameState2P s = working[positions.get(w)];
+            int side = sides[positions.get(w)];
+            int move = moves.get(w);
+            s.apply(move, side);
+            int d = s.getDistanceToGoal(1 - side);
+            s.undo(move, side);
+            return d;
+        }
+
+        public void tearDown() {
+            GameState2P.setDistanceCache(cache);
+        }
+    }
+
+    // stores or probes random keys, all stored beforehand in a table large enough for most of them
+    private static class TableBenchmark extends Benchmark {
+
+        private final boolean store;
+        private final TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+        private final long[] keys = new long[TABLE_KEYS];
+        private int i;
+
+        TableBenchmark(String name, boolean store) {
+            super(name);
+            this.store = store;
+        }
+
+        public void setUp() {
+            Random random = new Random(1);
+            for (int k = 0; k < keys.length; k++) {
+                keys[k] = random.nextLong();
+                table.store(keys[k], k & 255, k & 15, TranspositionTable.EXACT, MoveCode.UP);
+            }
+        }
+
+        public int run() {
+            long key = keys[i++ & (TABLE_KEYS - 1)];
+            if (store) {
+                table.store(key, i & 255, i & 15, TranspositionTable.LOWER, MoveCode.DOWN);
+                return i;
+            }
+            return (int) table.probe(key);
+        }
+    }
+
+    /*
+     * A fixed-depth search of every position, set up like the player's
+     * engine. The table, if any, is cleared before each search, so none
+     * profits from the one before.
+     */
+    private static class SearchBenchmark extends Benchmark {
+
+        private final SearchEngine engine = new SearchEngine();
+        private final TranspositionTable table;
+        private final GameState2P[] states;
+        private final int[] sides;
+        private long nodes;
+
+        SearchBenchmark(String name, int depth, int aspirationWindow, boolean transposition,
+                        GameState2P[] states, int[] sides) {
+            super(name);
+            this.states = states;
+            this.sides = sides;
+            engine.setDepthLimit(depth);
+            engine.setTimeLimit(0, TimeUnit.NANOSECONDS);
+            engine.setAspirationWindow(aspirationWindow);
+            engine.setThreads(1);
+            engine.setOpeningBook(null);
+            engine.setTablebase(null);
+            table = transposition ? new TranspositionTable(TABLE_MEGABYTES) : null;
+            engine.setTranspositionTable(table);
+        }
+
+        public int run() {
+            int moves = 0;
+            for (int p = 0; p < states.length; p++) {
+                if (table != null) {
+                    table.clear();
+                }
+                moves ^= engine.search(states[p], sides[p]);
+                nodes += engine.getStats().getNodes();
+            }
+            return moves;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+    }
+}
@@ -7,5 +7,11 @@ import quoridor.GameState2P;
  * @author steven
  */
 public interface Move {
+        // returns the resulting state, leaving s untouched
         public GameState2P doMove(GameState2P s);
+
+        // make/unmake: modify s in place, see GameState2P.apply
+        public void apply(GameState2P s);
+
+        public void undo(GameState2P s);
     }
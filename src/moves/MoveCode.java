@@ -0,0 +1,110 @@
+package moves;
+
+import quoridor.Wall;
+
+/**
+ * Compact int encoding of moves, used by the search and wherever a move
+ * has to be stored without keeping a Move object around, such as the
+ * transposition table. encode and decode convert to and from the Move
+ * objects which the display and HumanPlayer work with.
+ * The low three bits hold the type and the remaining bits the wall slot,
+ * which is the index of the grid point at the centre of the wall. The
+ * player is not part of the code; it follows from the side to move.
+ *
+ * @author steven
+ */
+public final class MoveCode {
+
+    public static final int NONE = 0;
+    public static final int UP = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 3;
+    public static final int RIGHT = 4;
+    public static final int HORIZONTAL_WALL = 5;
+    public static final int VERTICAL_WALL = 6;
+
+    // all codes are below this on boards up to 9x9, which have 64 slots
+    public static final int MAX_CODES = 64 << 3;
+
+    private MoveCode() {
+    }
+
+    public static int type(int code) {
+        return code & 7;
+    }
+
+    public static int slot(int code) {
+        return code >>> 3;
+    }
+
+    public static boolean isWall(int code) {
+        return type(code) >= HORIZONTAL_WALL;
+    }
+
+    public static int wall(boolean horizontal, int slot) {
+        return slot << 3 | (horizontal ? HORIZONTAL_WALL : VERTICAL_WALL);
+    }
+
+    public static int encode(Move m, int width) {
+        if (m instanceof PlayerUpMove) {
+            return UP;
+        }
+        else if (m instanceof PlayerDownMove) {
+            return DOWN;
+        }
+        else if (m instanceof PlayerLeftMove) {
+            return LEFT;
+        }
+        else if (m instanceof PlayerRightMove) {
+            return RIGHT;
+        }
+        else {
+            Wall w = ((WallMove) m).w;
+            if (w.isHorizontal()) {
+                return wall(true, (w.getStartRow() - 1) * (width - 1) + w.getStartCol());
+            }
+            else {
+                return wall(false, w.getStartRow() * (width - 1) + w.getStartCol() - 1);
+            }
+        }
+    }
+
+    public static Move decode(int code, int playerIndex, int width) {
+        int slot = slot(code);
+        switch (type(code)) {
+            case UP:
+                return new PlayerUpMove(playerIndex);
+            case DOWN:
+                return new PlayerDownMove(playerIndex);
+            case LEFT:
+                return new PlayerLeftMove(playerIndex);
+            case RIGHT:
+                return new PlayerRightMove(playerIndex);
+            case HORIZONTAL_WALL:
+                return new WallMove(playerIndex, new Wall(slot / (width - 1) + 1, slot % (width - 1), true));
+            case VERTICAL_WALL:
+                return new WallMove(playerIndex, new Wall(slot / (width - 1), slot % (width - 1) + 1, false));
+            default:
+                return null;
+        }
+    }
+
+    public static String toString(int code) {
+        switch (type(code)) {
+            case UP:
+                return "UP";
+            case DOWN:
+                return "DOWN";
+            case LEFT:
+                return "LEFT";
+            case RIGHT:
+                return "RIGHT";
+            case HORIZONTAL_WALL:
+                return "H" + slot(code);
+            case VERTICAL_WALL:
+                return "V" + slot(code);
+            default:
+                return "NONE";
+        }
+    }
+}
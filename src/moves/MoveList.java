@@ -0,0 +1,122 @@
+package moves;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable list of move codes, see MoveCode, each with an int score for
+ * ordering. A search keeps one list per ply and clears it at every node,
+ * so after the first few nodes it no longer allocates anything for its
+ * moves.
+ *
+ * @author steven
+ */
+public final class MoveList {
+
+    // enough for every move on a 9x9 board
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private int[] moves;
+    private int[] scores;
+    private int size;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MoveList(int capacity) {
+        moves = new int[Math.max(1, capacity)];
+        scores = new int[moves.length];
+    }
+
+    public void add(int move) {
+        if (size == moves.length) {
+            int[] grown = new int[2 * size];
+            System.arraycopy(moves, 0, grown, 0, size);
+            moves = grown;
+            grown = new int[2 * size];
+            System.arraycopy(scores, 0, grown, 0, size);
+            scores = grown;
+        }
+        scores[size] = 0;
+        moves[size++] = move;
+    }
+
+    public int get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    public int getScore(int i) {
+        return scores[i];
+    }
+
+    public void setScore(int i, int score) {
+        scores[i] = score;
+    }
+
+    public void swap(int i, int j) {
+        int t = moves[i];
+        moves[i] = moves[j];
+        moves[j] = t;
+        t = scores[i];
+        scores[i] = scores[j];
+        scores[j] = t;
+    }
+
+    /*
+     * Stable insertion sort on the scores, highest first. The lists of a
+     * node are short, and usually close to sorted already.
+     */
+    public void sortByScore() {
+        for (int i = 1; i < size; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i;
+            for (; j > 0 && scores[j - 1] < score; j--) {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            moves[j] = move;
+            scores[j] = score;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /*
+     * Decodes the list into Move objects, for code outside the search such
+     * as the display and HumanPlayer.
+     */
+    public List<Move> toMoves(int playerIndex, int width) {
+        List<Move> res = new ArrayList<Move>();
+        for (int i = 0; i < size; i++) {
+            res.add(MoveCode.decode(moves[i], playerIndex, width));
+        }
+        return res;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(MoveCode.toString(moves[i]));
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -18,6 +18,14 @@ public class PlayerDownMove implements Move {
         return s.moveDown(index);
     }
 
+    public void apply(GameState2P s) {
+        s.stepPlayer(index, -1, 0);
+    }
+
+    public void undo(GameState2P s) {
+        s.stepPlayer(index, 1, 0);
+    }
+
     public String toString() {
         return "DOWN";
     }
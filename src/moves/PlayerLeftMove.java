@@ -18,6 +18,14 @@ public class PlayerLeftMove implements Move {
             return s.moveLeft(index);
         }
 
+        public void apply(GameState2P s) {
+            s.stepPlayer(index, 0, -1);
+        }
+
+        public void undo(GameState2P s) {
+            s.stepPlayer(index, 0, 1);
+        }
+
         public String toString() {
             return "LEFT";
         }
@@ -18,6 +18,14 @@ public class PlayerRightMove implements Move {
         return s.moveRight(index);
     }
 
+    public void apply(GameState2P s) {
+        s.stepPlayer(index, 0, 1);
+    }
+
+    public void undo(GameState2P s) {
+        s.stepPlayer(index, 0, -1);
+    }
+
     public String toString() {
         return "RIGHT";
     }
@@ -18,6 +18,14 @@ import quoridor.GameState2P;
             return s.moveUp(index);
         }
 
+        public void apply(GameState2P s) {
+            s.stepPlayer(index, 1, 0);
+        }
+
+        public void undo(GameState2P s) {
+            s.stepPlayer(index, -1, 0);
+        }
+
         public String toString() {
             return "UP";
         }
@@ -16,10 +16,22 @@ public class WallMove implements Move {
             this.w = w;
         }
 
+        public Wall getWall() {
+            return w;
+        }
+
         public GameState2P doMove(GameState2P s) {
             return s.placeWall(index, w);
         }
 
+        public void apply(GameState2P s) {
+            s.pushWall(index, w);
+        }
+
+        public void undo(GameState2P s) {
+            s.popWall(index, w);
+        }
+
         public String toString() {
             return "WALL (" + w.getStartRow() + "," + w.getStartCol() + "," + w.isHorizontal() + ")";
         }
@@ -0,0 +1,154 @@
+package openingbook;
+
+import moves.MoveList;
+import quoridor.GameState2P;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads an opening book built by OpeningBookBuilder: for positions near
+ * the start of the game, the move a deep search chose, with its score
+ * and depth.
+ *
+ * The file is memory-mapped and searched where it lies, so opening it
+ * costs nothing and a lookup neither copies nor allocates anything but
+ * the legality check of the move found. Any number of threads can probe
+ * it at once.
+ *
+ * File layout, all numbers big-endian: the magic number, board width,
+ * board height, walls per player and the number of entries; then the
+ * entries, sorted by key, each the position's key with the side to move
+ * (GameState2P.key) and its data, packed like a transposition table
+ * entry: bits 0-15 score, 16-23 depth, 32-63 move.
+ *
+ * @author steven
+ */
+public class OpeningBook {
+
+    static final int MAGIC = 0x51424B31;
+    static final int HEADER_BYTES = 20;
+    static final int ENTRY_BYTES = 16;
+
+    static final int DEPTH_SHIFT = 16;
+    static final int MOVE_SHIFT = 32;
+
+    private static OpeningBook defaultBook;
+    private static boolean defaultLoaded;
+
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final int wallsPerPlayer;
+    private final int size;
+
+    OpeningBook(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("not an opening book");
+        }
+        width = data.getInt(4);
+        height = data.getInt(8);
+        wallsPerPlayer = data.getInt(12);
+        size = data.getInt(16);
+        if (data.capacity() != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+            throw new IOException("opening book truncated");
+        }
+    }
+
+    public static OpeningBook open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the file is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OpeningBook(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /*
+     * The book named by the system property quoridor.book, or null if
+     * there is none.
+     */
+    public static synchronized OpeningBook getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            String file = System.getProperty("quoridor.book");
+            if (file != null) {
+                try {
+                    defaultBook = open(new File(file));
+                } catch (IOException e) {
+                    System.err.println("Cannot read opening book " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return defaultBook;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * The entry for the state with the player to move, or 0 if the book
+     * has none. An entry is only returned when its move is legal in the
+     * state, as two positions can share a key.
+     */
+    public long probe(GameState2P state, int index) {
+        if (state.getWidth() != width || state.getHeight() != height
+                || state.getNrWallsLeft(0) > wallsPerPlayer || state.getNrWallsLeft(1) > wallsPerPlayer) {
+            return 0;
+        }
+        long key = state.key(index);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long k = data.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (k < key) {
+                low = mid + 1;
+            }
+            else if (k > key) {
+                high = mid - 1;
+            }
+            else {
+                long entry = data.getLong(HEADER_BYTES + mid * ENTRY_BYTES + 8);
+                return isLegal(state, index, move(entry)) ? entry : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isLegal(GameState2P state, int index, int move) {
+        MoveList moves = new MoveList();
+        state.generateMoves(index, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static long pack(int move, int score, int depth) {
+        return (score & 0xFFFFL) | (long) Math.min(depth, 255) << DEPTH_SHIFT | (long) move << MOVE_SHIFT;
+    }
+
+    public static int score(long entry) {
+        return (short) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 255;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT);
+    }
+}
@@ -0,0 +1,140 @@
+package openingbook;
+
+import moves.MoveCode;
+import players.SearchEngine;
+import quoridor.GameState2P;
+import quoridor.MoveGenerator;
+import quoridor.RaceSolver;
+import transpositiontable.TranspositionTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the opening book read by OpeningBook. Starting from the initial
+ * position of the board (see GameState2P.fromProperties), it searches
+ * every position reachable in a given number of plies, each for a fixed
+ * time with all threads (Lazy SMP, sharing one table across the whole
+ * book), and stores the move found.
+ *
+ * Only the move found, pawn moves and walls across the opponent's
+ * shortest path are followed: other quiet walls (see
+ * MoveGenerator.isQuiet) are rarely played this early, and leaving them
+ * out keeps the book small. Positions reached by more than one line are
+ * searched once, and races, which RaceSolver answers at once anyway, are
+ * left out.
+ *
+ * Usage: java openingbook.OpeningBookBuilder file [plies [seconds [threads]]]
+ *
+ * @author steven
+ */
+public class OpeningBookBuilder {
+
+    public static final int DEFAULT_PLIES = 3;
+    public static final int DEFAULT_SECONDS = 1;
+
+    private final SearchEngine engine = new SearchEngine();
+
+    // by key: the entry found for the position
+    private final Map<Long, Long> entries = new HashMap<Long, Long>();
+
+    private GameState2P start;
+
+    public OpeningBookBuilder(long time, TimeUnit unit, int threads) {
+        engine.setTimeLimit(time, unit);
+        engine.setTranspositionTable(new TranspositionTable(TranspositionTable.DEFAULT_MEGABYTES * 16));
+        engine.setThreads(threads);
+        // the engine must not answer from the book it is building, nor from a tablebase the players may lack
+        engine.setOpeningBook(null);
+        engine.setTablebase(null);
+    }
+
+    /*
+     * Searches every position up to the given number of plies from the
+     * initial one, and returns the number of positions in the book.
+     */
+    public int build(int plies) {
+        start = GameState2P.fromProperties();
+        List<GameState2P> positions = new ArrayList<GameState2P>();
+        positions.add(start);
+        int side = 0;
+        for (int ply = 0; ply <= plies && !positions.isEmpty(); ply++) {
+            long startTime = System.nanoTime();
+            List<GameState2P> next = new ArrayList<GameState2P>();
+            for (GameState2P state : positions) {
+                int move = engine.search(state, side);
+                entries.put(state.key(side), OpeningBook.pack(move, engine.getScore(), engine.getDepth()));
+                if (ply < plies) {
+                    addChild(state, side, move, next);
+                    MoveGenerator generator = new MoveGenerator(state, side, MoveCode.NONE);
+                    for (int m = generator.next(); m != MoveCode.NONE && !generator.isQuiet(m); m = generator.next()) {
+                        addChild(state, side, m, next);
+                    }
+                }
+            }
+            System.out.printf("ply %d: %d positions in %.1f s%n", ply, positions.size(), (System.nanoTime() - startTime) / 1e9);
+            positions = next;
+            side = 1 - side;
+        }
+        return entries.size();
+    }
+
+    // adds the child after the move to the list, unless it is in the book or the list already
+    private void addChild(GameState2P state, int side, int move, List<GameState2P> next) {
+        GameState2P child = new GameState2P(state);
+        child.apply(move, side);
+        long key = child.key(1 - side);
+        if (child.isGameOver() || RaceSolver.isRace(child) || entries.containsKey(key)) {
+            return;
+        }
+        // a placeholder, so that transpositions are only added once
+        entries.put(key, 0L);
+        next.add(child);
+    }
+
+    public void write(String file) throws IOException {
+        long[] keys = new long[entries.size()];
+        int n = 0;
+        for (Long key : entries.keySet()) {
+            keys[n++] = key;
+        }
+        Arrays.sort(keys);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(start.getWidth());
+            out.writeInt(start.getHeight());
+            out.writeInt(start.getWallsPerPlayer());
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(entries.get(keys[i]));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java openingbook.OpeningBookBuilder file [plies [seconds [threads]]]");
+            return;
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_SECONDS;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long startTime = System.nanoTime();
+        OpeningBookBuilder builder = new OpeningBookBuilder((long) (seconds * 1000), TimeUnit.MILLISECONDS, threads);
+        int size = builder.build(plies);
+        builder.write(args[0]);
+        System.out.printf("Wrote %d positions in %.1f s with %d threads%n", size, (System.nanoTime() - startTime) / 1e9, threads);
+    }
+}
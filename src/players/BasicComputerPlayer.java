@@ -1,10 +1,8 @@
 package players;
 
-import moves.Move;
 import quoridor.GameState2P;
 import quoridor.Quoridor;
 
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -14,77 +12,25 @@ import java.util.Random;
 public class BasicComputerPlayer extends QuoridorPlayer {
 
     public static Random random = new Random();
-    private int indexOpponent;
     private int maxDepth = 3;
 
+    // a fixed depth: our move and maxDepth plies after it
+    private SearchEngine engine = new SearchEngine();
+
     public BasicComputerPlayer(GameState2P state, int index, Quoridor game) {
         super(state, index, game);
-        indexOpponent = (index + 1) % 2;
+        engine.setDepthLimit(maxDepth + 1);
+        // the reference the others are measured against: no reductions, pruning, book or tablebase
+        engine.setKillersAndHistory(false);
+        engine.setLateMoveReductions(false);
+        engine.setFutilityPruning(false);
+        engine.setOpeningBook(null);
+        engine.setTablebase(null);
     }
 
     public void chooseMove() {
-        List<Move> legalMoves = GameState2P.getLegalMoves(state, index);
-        Move bestMove = null;
-        double bestScore = 0;
-        for (Move m : legalMoves) {
-            GameState2P next = m.doMove(state);
-            double score = getMinScoreAlphaBeta(next, maxDepth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-            if (bestMove == null || score > bestScore) {
-                bestMove = m;
-                bestScore = score;
-            }
-        }
-
-        System.out.println("Depth: " + maxDepth + " basic score: " + bestScore);
-        GameState2P newState = bestMove.doMove(state);
-        game.doMove(index, newState);
-    }
-
-    /*
-     * Consider all possible moves by our opponent
-     */
-    private double getMinScoreAlphaBeta(GameState2P s, int depth, double alpha, double beta) {
-        double res;
-        if (depth == 0 || s.isGameOver()) {
-            res = s.evaluateState(index);
-        }
-        else {
-            List<Move> opponentMoves = GameState2P.getLegalMoves(s, indexOpponent);
-            res = Double.POSITIVE_INFINITY;
-            for (Move move : opponentMoves) {
-                GameState2P next = move.doMove(s);
-                double score = getMaxScoreAlphaBeta(next, depth - 1, alpha, beta);
-                res = Math.min(res, score);
-                beta = Math.min(beta, score);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        return res;
-    }
-
-    /*
-     * Consider all possible moves we can play
-     */
-    private double getMaxScoreAlphaBeta(GameState2P s, int depth, double alpha, double beta) {
-        double res;
-        if (depth == 0 || s.isGameOver()) {
-            res = s.evaluateState(index);
-        }
-        else {
-            List<Move> myMoves = GameState2P.getLegalMoves(s, index);
-            res = Double.NEGATIVE_INFINITY;
-            for (Move move : myMoves) {                
-                GameState2P next = move.doMove(s);
-                double score = getMinScoreAlphaBeta(next, depth - 1, alpha, beta);
-                res = Math.max(res, score);
-                alpha = Math.max(alpha, score);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        return res;
+        int bestMove = engine.search(state, index);
+        recordSearch(engine.getStats());
+        play(bestMove);
     }
 }
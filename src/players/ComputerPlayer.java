@@ -1,10 +1,8 @@
 package players;
 
-import moves.Move;
 import quoridor.GameState2P;
 import quoridor.Quoridor;
 
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class ComputerPlayer extends QuoridorPlayer {
@@ -58,89 +56,32 @@ public class ComputerPlayer extends QuoridorPlayer {
      */
 
     private long maxTime = TimeUnit.NANOSECONDS.convert(5, TimeUnit.SECONDS);
-    private int indexOpponent;
 
-    public ComputerPlayer(GameState2P state, int index, Quoridor game) {
-        super(state, index, game);
-        indexOpponent = (index + 1) % 2;
-    }
-
-    public void chooseMove() {
-        List<Move> legalMoves = GameState2P.getLegalMoves(state, index);
-        long startTime = System.nanoTime();
-        Move bestMove = null;
-        int maxDepth;
-        double bestScore = 0;
-
-        // For iterative deepening we need to create a loop where the depth starts at one and will be incremented by one.
-        for (maxDepth = 1; (System.nanoTime() - startTime) <= maxTime; maxDepth++) {
-
-            for (Move m : legalMoves) {
-                //  Continue until the maximum time had been exceeded
-                if ((System.nanoTime() - startTime) >= maxTime) {
-                    break;
-                }
-
-                GameState2P next = m.doMove(state);
-                double score = getMinScoreAlphaBeta(next, maxDepth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    // iterative deepening until the time is up
+    private SearchEngine engine = new SearchEngine();
 
-                // We use greater than and equal to bestscore because we consider putting up walls to be better.
-                // Even if the score is the same.
-                if (bestMove == null || score >= bestScore) {
-                    bestScore = score;
-                    bestMove = m;
-                }
-            }
-        }
-
-        System.out.println("Depth: " + maxDepth + " itera score: " + bestScore);
-        GameState2P newState = bestMove.doMove(state);
-        game.doMove(index, newState);
+    public ComputerPlayer(GameState2P state, int index, Quoridor game) {
+        this(state, index, game, Integer.getInteger("quoridor.searchThreads", 1));
     }
 
     /*
-     * Consider all possible moves by our opponent
+     * With more than one thread, the engine splits the tree over a
+     * fork/join pool with Young Brothers Wait, as this player has no table
+     * to share.
      */
-    private double getMinScoreAlphaBeta(GameState2P s, int depth, double alpha, double beta) {
-        double res;
-        if (depth == 0 || s.isGameOver()) {
-            res = s.evaluateState(index);
-        } else {
-            List<Move> opponentMoves = GameState2P.getLegalMoves(s, indexOpponent);
-            res = Double.POSITIVE_INFINITY;
-            for (Move move : opponentMoves) {
-                GameState2P next = move.doMove(s);
-                double score = getMaxScoreAlphaBeta(next, depth - 1, alpha, beta);
-                res = Math.min(res, score);
-                beta = Math.min(beta, score);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        return res;
+    public ComputerPlayer(GameState2P state, int index, Quoridor game, int threads) {
+        super(state, index, game);
+        engine.setTimeLimit(maxTime, TimeUnit.NANOSECONDS);
+        engine.setThreads(threads);
     }
 
-    /*
-     * Consider all possible moves we can play
-     */
-    private double getMaxScoreAlphaBeta(GameState2P s, int depth, double alpha, double beta) {
-        double res;
-        if (depth == 0 || s.isGameOver()) {
-            res = s.evaluateState(index);
-        } else {
-            List<Move> myMoves = GameState2P.getLegalMoves(s, index);
-            res = Double.NEGATIVE_INFINITY;
-            for (Move move : myMoves) {
-                GameState2P next = move.doMove(s);
-                double score = getMinScoreAlphaBeta(next, depth - 1, alpha, beta);
-                res = Math.max(res, score);
-                alpha = Math.max(alpha, score);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        return res;
+    public void setMoveTime(long time, TimeUnit unit) {
+        engine.setTimeLimit(time, unit);
+    }
+
+    public void chooseMove() {
+        int bestMove = engine.search(state, index);
+        recordSearch(engine.getStats());
+        play(bestMove);
     }
 }
@@ -14,12 +14,15 @@ import quoridor.Wall;
 public class HumanPlayer extends QuoridorPlayer implements KeyListener {
 
     boolean placeWall = false;
-    int initialWallRow = 2; 
-    int initialWallCol = 2; 
+    int initialWallRow; 
+    int initialWallCol; 
     boolean isCurrentWallHorizontal = true;
 
     public HumanPlayer(GameState2P state, int index, Quoridor game) {
         super(state, index, game);
+        // the wall cursor starts in the middle of the board
+        initialWallRow = state.getHeight() / 2;
+        initialWallCol = (state.getWidth() - 1) / 2;
     }
 
     public void setDisplay(GameDisplay display) {
@@ -0,0 +1,39 @@
+package players;
+
+import quoridor.GameState2P;
+import quoridor.Quoridor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monte Carlo Tree Search player, see MonteCarloSearch. It uses all cores
+ * unless quoridor.searchThreads says otherwise.
+ *
+ * @author steven
+ */
+public class MonteCarloPlayer extends QuoridorPlayer {
+
+    private long maxTime = TimeUnit.NANOSECONDS.convert(5, TimeUnit.SECONDS);
+
+    private MonteCarloSearch search = new MonteCarloSearch();
+
+    public MonteCarloPlayer(GameState2P state, int index, Quoridor game) {
+        this(state, index, game, Integer.getInteger("quoridor.searchThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public MonteCarloPlayer(GameState2P state, int index, Quoridor game, int threads) {
+        super(state, index, game);
+        search.setTimeLimit(maxTime, TimeUnit.NANOSECONDS);
+        search.setThreads(threads);
+    }
+
+    public void setMoveTime(long time, TimeUnit unit) {
+        search.setTimeLimit(time, unit);
+    }
+
+    public void chooseMove() {
+        int bestMove = search.search(state, index);
+        recordSearch(search.getStats());
+        play(bestMove);
+    }
+}
@@ -0,0 +1,426 @@
+package players;
+
+import moves.MoveCode;
+import quoridor.DistanceCache;
+import quoridor.GameState2P;
+import quoridor.MoveGenerator;
+import quoridor.RaceSolver;
+import quoridor.Tablebase;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo Tree Search with UCT. Every playout walks down the tree,
+ * always to the child with the best upper confidence bound, adds the
+ * children of the node it ends in, and plays the game out from there with
+ * a fast rollout. Its result is then counted in every node on the way.
+ *
+ * The tree only holds pawn moves and walls that cross the opponent's
+ * shortest path; quiet walls (see MoveGenerator.isQuiet) cannot hurt the
+ * opponent right away, and leaving them out keeps the tree narrow.
+ *
+ * Rollouts are guided by the distance tables: a player mostly steps along
+ * its shortest path, and when the opponent is ahead it sometimes places a
+ * wall across the opponent's path instead. Once neither player has a wall
+ * left, RaceSolver decides the game, so the tree and the rollouts stop
+ * there; so does the endgame tablebase, if there is one (see Tablebase).
+ *
+ * Several threads share one tree. A thread that walks through a node adds
+ * a virtual loss to it until its result comes back, so that the other
+ * threads prefer other nodes meanwhile instead of all following the same
+ * line.
+ *
+ * @author steven
+ */
+public class MonteCarloSearch {
+
+    // exploration constant of the upper confidence bound
+    private static final double EXPLORATION = 0.7;
+
+    // losses a thread adds to a node while its playout through it runs
+    private static final int VIRTUAL_LOSS = 3;
+
+    // a node gets children on its second visit
+    private static final int EXPAND_VISITS = 1;
+
+    // chance that a player behind in the race walls the opponent in a rollout
+    private static final double WALL_PROBABILITY = 0.3;
+
+    // chance of a random step instead of one along the shortest path
+    private static final double RANDOM_STEP = 0.1;
+
+    /*
+     * Random steps and walls can make a rollout long; after this many
+     * plies it goes to the player ahead in the race.
+     */
+    private static final int MAX_ROLLOUT_PLIES = 200;
+
+    private long timeLimit;
+    private long playoutLimit;
+    private int threads = 1;
+    private Tablebase tablebase = Tablebase.getDefault();
+
+    private GameState2P rootState;
+    private int rootSide;
+    private Node root;
+    private volatile long deadline;
+    private final AtomicLong playoutsLeft = new AtomicLong();
+
+    private long rollouts;
+    private long elapsed;
+    private volatile SearchStats stats = new SearchStats();
+
+    // the number of threads that run playouts, the calling thread included
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // the search stops when the time is up; zero means no limit
+    public void setTimeLimit(long time, TimeUnit unit) {
+        timeLimit = unit.toNanos(time);
+    }
+
+    /*
+     * The search also stops after this many playouts, give or take one per
+     * thread, which makes its work independent of the clock; zero means no
+     * limit.
+     */
+    public void setPlayoutLimit(long playoutLimit) {
+        this.playoutLimit = playoutLimit;
+    }
+
+    // null plays without one
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /*
+     * Runs playouts from the state, for the player to move, until the time
+     * is up, and returns the most visited move as a MoveCode. The state is
+     * not modified.
+     */
+    public int search(GameState2P state, int side) {
+        DistanceCache cache = GameState2P.getDistanceCache();
+        long cacheHits = cache.getHits();
+        long cacheMisses = cache.getMisses();
+        long start = System.nanoTime();
+
+        int move = choose(state, side);
+
+        // a solved root has no playouts
+        SearchStats s = new SearchStats();
+        s.source = rollouts == 0 ? SearchStats.SOLVED : SearchStats.PLAYOUTS;
+        s.move = move;
+        s.nodes = rollouts;
+        s.elapsed = System.nanoTime() - start;
+        s.cacheHits = cache.getHits() - cacheHits;
+        s.cacheMisses = cache.getMisses() - cacheMisses;
+        stats = s;
+        return move;
+    }
+
+    // the solved move, or the one the playouts find
+    private int choose(GameState2P state, int side) {
+        long startTime = System.nanoTime();
+        deadline = timeLimit == 0 ? Long.MAX_VALUE : startTime + timeLimit;
+        playoutsLeft.set(playoutLimit == 0 ? Long.MAX_VALUE : playoutLimit);
+        rootState = new GameState2P(state);
+        rootSide = side;
+        root = new Node(null, MoveCode.NONE, 1 - side);
+        rollouts = 0;
+        elapsed = 0;
+        // the tree stops where the game is decided, so a decided root has no children
+        if (!state.isGameOver() && RaceSolver.isRace(state)) {
+            return RaceSolver.bestMove(state, side);
+        }
+        if (tablebase != null && !state.isGameOver()) {
+            int move = tablebase.bestMove(state, side);
+            if (move != MoveCode.NONE) {
+                return move;
+            }
+        }
+
+        Playouts[] playouts = new Playouts[threads];
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 0; i < threads; i++) {
+            playouts[i] = new Playouts(startTime + i);
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Thread(playouts[i + 1], "playouts-" + (i + 1));
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+        playouts[0].run();
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                helpers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        elapsed = System.nanoTime() - startTime;
+        rollouts = 0;
+        for (int i = 0; i < threads; i++) {
+            rollouts += playouts[i].rollouts;
+        }
+
+        Node best = bestChild();
+        return best == null ? MoveCode.NONE : best.move;
+    }
+
+    private Node bestChild() {
+        Node[] children = root.children;
+        if (children == null) {
+            return null;
+        }
+        Node best = null;
+        for (int i = 0; i < children.length; i++) {
+            if (best == null || children[i].visits > best.visits) {
+                best = children[i];
+            }
+        }
+        return best;
+    }
+
+    /*
+     * What the last search did. The tree has no depth, so only the
+     * playouts, their time and the distance cache are counted.
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public long getRollouts() {
+        return rollouts;
+    }
+
+    public double rolloutsPerSecond() {
+        return elapsed == 0 ? 0 : rollouts * 1e9 / elapsed;
+    }
+
+    // the fraction of playouts through the chosen move that the player won
+    public double getWinRate() {
+        Node best = bestChild();
+        return best == null || best.visits == 0 ? 0 : best.wins / best.visits;
+    }
+
+    public String toString() {
+        Node best = bestChild();
+        return String.format("MCTS: %d rollouts, %.0f rollouts/s, %d threads, best move %s visited %d times, win rate %.2f",
+                rollouts, rolloutsPerSecond(), threads, best == null ? "none" : MoveCode.toString(best.move),
+                best == null ? 0 : best.visits, getWinRate());
+    }
+
+    /*
+     * A node of the tree: the state after its move, made by player side.
+     * Its counts are guarded by the node itself; children is only set
+     * once, also under the lock, and read without it.
+     */
+    private static class Node {
+
+        private final Node parent;
+        private final int move;
+        private final int side;
+        private volatile Node[] children;
+        private int visits;
+        private double wins;
+
+        Node(Node parent, int move, int side) {
+            this.parent = parent;
+            this.move = move;
+            this.side = side;
+        }
+    }
+
+    // one thread's playouts, with its own state, generator and random numbers
+    private class Playouts implements Runnable {
+
+        private final Random random;
+        private final MoveGenerator generator = new MoveGenerator();
+        private final int[] moves = new int[4];
+        private long rollouts;
+        // whether the node select returned had not been visited before
+        private boolean firstVisit;
+
+        Playouts(long seed) {
+            random = new Random(seed);
+        }
+
+        public void run() {
+            do {
+                playout();
+                rollouts++;
+            } while (System.nanoTime() < deadline && playoutsLeft.decrementAndGet() > 0);
+        }
+
+        private void playout() {
+            GameState2P s = new GameState2P(rootState);
+            int side = rootSide;
+            Node node = root;
+            // a player left without moves loses
+            int winner = -1;
+            while (!s.isGameOver() && winner(s, side) < 0 && (node.children != null || expand(node, s, side))) {
+                Node child = select(node);
+                if (child == null) {
+                    winner = 1 - side;
+                    break;
+                }
+                node = child;
+                s.apply(node.move, side);
+                side = 1 - side;
+                if (firstVisit) {
+                    // the rollout starts from a new node
+                    break;
+                }
+            }
+            if (winner < 0) {
+                winner = rollout(s, side);
+            }
+            for (Node n = node; n != null; n = n.parent) {
+                synchronized (n) {
+                    n.visits += n == root ? 1 : 1 - VIRTUAL_LOSS;
+                    if (n.side == winner) {
+                        n.wins++;
+                    }
+                }
+            }
+        }
+
+        /*
+         * The child with the best upper confidence bound, the first
+         * unvisited one if there is one, with a virtual loss added.
+         */
+        private Node select(Node node) {
+            synchronized (node) {
+                Node[] children = node.children;
+                Node best = null;
+                double bestValue = Double.NEGATIVE_INFINITY;
+                double logVisits = Math.log(Math.max(1, node.visits));
+                for (int i = 0; i < children.length; i++) {
+                    Node c = children[i];
+                    double value;
+                    synchronized (c) {
+                        value = c.visits == 0 ? Double.POSITIVE_INFINITY
+                                : c.wins / c.visits + EXPLORATION * Math.sqrt(logVisits / c.visits);
+                    }
+                    if (value > bestValue) {
+                        best = c;
+                        bestValue = value;
+                    }
+                }
+                if (best != null) {
+                    synchronized (best) {
+                        firstVisit = best.visits == 0;
+                        best.visits += VIRTUAL_LOSS;
+                    }
+                }
+                return best;
+            }
+        }
+
+        /*
+         * Adds the children of the node, in the generator's order, once it
+         * has been visited often enough. Returns whether it has children.
+         */
+        private boolean expand(Node node, GameState2P s, int side) {
+            synchronized (node) {
+                if (node.children != null) {
+                    return true;
+                }
+                if (node.visits < EXPAND_VISITS) {
+                    return false;
+                }
+                Node[] children = new Node[8];
+                int n = 0;
+                generator.reset(s, side, MoveCode.NONE);
+                for (int m = generator.next(); m != MoveCode.NONE && !generator.isQuiet(m); m = generator.next()) {
+                    if (n == children.length) {
+                        Node[] grown = new Node[2 * n];
+                        System.arraycopy(children, 0, grown, 0, n);
+                        children = grown;
+                    }
+                    children[n++] = new Node(node, m, side);
+                }
+                Node[] exact = new Node[n];
+                System.arraycopy(children, 0, exact, 0, n);
+                node.children = exact;
+                return true;
+            }
+        }
+
+        /*
+         * Plays the game out from the state, side to move, and returns the
+         * winner. The state is used up.
+         */
+        private int rollout(GameState2P s, int side) {
+            for (int ply = 0; !s.isGameOver(); ply++) {
+                int winner = winner(s, side);
+                if (winner >= 0) {
+                    return winner;
+                }
+                if (ply == MAX_ROLLOUT_PLIES) {
+                    return s.getDistanceToGoal(side) <= s.getDistanceToGoal(1 - side) ? side : 1 - side;
+                }
+                s.apply(rolloutMove(s, side), side);
+                side = 1 - side;
+            }
+            return s.getPlayerRow(0) == s.getHeight() - 1 ? 0 : 1;
+        }
+
+        // the winner under perfect play if the race solver or the tablebase knows it, or -1
+        private int winner(GameState2P s, int side) {
+            if (RaceSolver.isRace(s)) {
+                return RaceSolver.winner(s, side);
+            }
+            if (tablebase != null) {
+                int plies = tablebase.plies(s, side);
+                if (plies >= 0) {
+                    return (plies & 1) != 0 ? side : 1 - side;
+                }
+            }
+            return -1;
+        }
+
+        private int rolloutMove(GameState2P s, int side) {
+            generator.reset(s, side, MoveCode.NONE);
+            if (s.getNrWallsLeft(side) > 0 && s.getDistanceToGoal(1 - side) < s.getDistanceToGoal(side)
+                    && random.nextDouble() < WALL_PROBABILITY) {
+                int wall = randomPathWall();
+                if (wall != MoveCode.NONE) {
+                    return wall;
+                }
+                generator.reset(s, side, MoveCode.NONE);
+            }
+            /*
+             * The pawn moves come first, closest to the goal first. Pawns do
+             * not block each other and a wall never cuts a path, so a pawn
+             * always has a step along its shortest path.
+             */
+            int n = 0;
+            for (int m = generator.next(); m != MoveCode.NONE && !MoveCode.isWall(m); m = generator.next()) {
+                moves[n++] = m;
+            }
+            return random.nextDouble() < RANDOM_STEP ? moves[random.nextInt(n)] : moves[0];
+        }
+
+        // a random wall across the opponent's shortest path, or NONE
+        private int randomPathWall() {
+            int chosen = MoveCode.NONE;
+            int seen = 0;
+            for (int m = generator.next(); m != MoveCode.NONE; m = generator.next()) {
+                if (!MoveCode.isWall(m)) {
+                    continue;
+                }
+                if (generator.isQuiet(m)) {
+                    break;
+                }
+                if (random.nextInt(++seen) == 0) {
+                    chosen = m;
+                }
+            }
+            return chosen;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package players;
 
+import moves.MoveCode;
 import quoridor.GameDisplay;
 import quoridor.GameState2P;
 import quoridor.Quoridor;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  *
  * @author steven
@@ -14,6 +17,16 @@ public abstract class QuoridorPlayer {
     protected GameDisplay display;    
     protected Quoridor game;
     int index;
+
+    // totals over the player's searches, see recordSearch
+    private int searches;
+    private long totalDepth;
+    private long totalNodes;
+    private long searchTime;
+    private SearchStats lastSearch;
+    // whether recordSearch leaves out the log line
+    private boolean quiet;
+
         
     public QuoridorPlayer(GameState2P state, int index, Quoridor game){
         this.state=state;                             
@@ -30,5 +43,61 @@ public abstract class QuoridorPlayer {
     }
     
     public abstract void chooseMove();
+
+    /*
+     * Sets the time the player may think about each move. Players that
+     * search to a fixed depth ignore it.
+     */
+    public void setMoveTime(long time, TimeUnit unit) {
+    }
+
+    /*
+     * Counts a search in the totals, logs what it did in one line unless
+     * the player is quiet, and publishes it through JMX (see
+     * SearchMonitor).
+     */
+    protected void recordSearch(SearchStats stats) {
+        searches++;
+        totalDepth += stats.getDepth();
+        totalNodes += stats.getNodes();
+        searchTime += stats.getElapsed();
+        lastSearch = stats;
+        String name = getClass().getSimpleName() + "-" + index;
+        SearchMonitor.get(name).add(stats);
+        if (!quiet) {
+            System.out.println(name + ": " + stats);
+        }
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    // what the player's last search did, or null before its first move
+    public SearchStats getLastSearch() {
+        return lastSearch;
+    }
+
+    public int getSearches() {
+        return searches;
+    }
+
+    public long getTotalDepth() {
+        return totalDepth;
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public long getSearchTime() {
+        return searchTime;
+    }
+
+    // plays a move given as a MoveCode
+    protected void play(int move) {
+        GameState2P newState = MoveCode.decode(move, index, state.getWidth()).doMove(state);
+        game.doMove(index, newState);
+    }
     
 }
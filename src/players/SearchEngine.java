@@ -0,0 +1,993 @@
+package players;
+
+import moves.MoveCode;
+import moves.MoveList;
+import openingbook.OpeningBook;
+import quoridor.DistanceCache;
+import quoridor.GameState2P;
+import quoridor.MoveGenerator;
+import quoridor.RaceSolver;
+import quoridor.Tablebase;
+import transpositiontable.TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The search shared by all computer players: iterative deepening negamax
+ * with Principal Variation Search. Scores are ints, always from the point
+ * of view of the player to move. The first move of a node is searched
+ * with the full window, the others with a zero window around alpha, which
+ * only proves that they are no better; a move that turns out better is
+ * searched again with the full window.
+ *
+ * The players differ only in how they configure the engine: a depth or
+ * time limit, an aspiration window, a transposition table and a number of
+ * threads. With a table, extra threads run Lazy SMP (see Worker); without
+ * one, there is nothing for them to share, so they split the tree with
+ * Young Brothers Wait instead (see SplitTask).
+ *
+ * Once neither player has a wall left, RaceSolver gives the exact score,
+ * so such nodes are leaves at any depth, and a race at the root is not
+ * searched at all. The same goes for positions with only a few walls left
+ * when there is an endgame tablebase (see Tablebase); by default the one
+ * named by the property quoridor.tablebase.
+ *
+ * Near the start of the game, the engine plays from its opening book
+ * (see OpeningBook) without searching; by default the one named by the
+ * property quoridor.book.
+ *
+ * With a table, the engine can also ponder: search the position it
+ * expects after the opponent's reply while the opponent thinks, so that
+ * when the reply comes its search is already under way.
+ *
+ * After each search, getStats tells what it did (see SearchStats).
+ *
+ * @author steven
+ */
+public class SearchEngine {
+
+    // larger than any evaluation, and small enough for the table
+    public static final int INFINITY = 30000;
+
+    public static final int MAX_DEPTH = 100;
+
+    /*
+     * Nodes with less depth left than this are searched by one thread, as
+     * splitting them costs more than it saves.
+     */
+    private static final int MIN_SPLIT_DEPTH = 3;
+
+    // history scores are halved when one gets above this
+    private static final int MAX_HISTORY = 1 << 20;
+
+    /*
+     * Late move reductions: a quiet wall tried after this many moves, in a
+     * node with at least this much depth left, is searched one ply less
+     * deep first.
+     */
+    private static final int LMR_MIN_MOVES = 3;
+    private static final int LMR_MIN_DEPTH = 3;
+
+    /*
+     * How much a quiet wall can raise the evaluation for the player, by
+     * depth left. With one ply left it cannot raise it at all; with two,
+     * the opponent's reply can at most be a step away from its goal.
+     */
+    private static final int[] FUTILITY_MARGIN = {0, 0, 1};
+
+    private int depthLimit = MAX_DEPTH;
+    private final TimeManager time = new TimeManager();
+    private int aspirationWindow;
+    private boolean pvs = true;
+    private boolean killersAndHistory = true;
+    private boolean lateMoveReductions = true;
+    private boolean futilityPruning = true;
+    private TranspositionTable table;
+    private Tablebase tablebase = Tablebase.getDefault();
+    private OpeningBook book = OpeningBook.getDefault();
+
+    // what the last search did
+    private volatile SearchStats stats = new SearchStats();
+
+    // the background search started by ponder, and the move it found
+    private Thread ponderThread;
+    private volatile int ponderMove;
+
+    // one per Lazy SMP thread, the calling thread being workers[0]
+    private Worker[] workers = {new Worker(0)};
+
+    // only used for Young Brothers Wait
+    private ForkJoinPool pool;
+    private final List<Worker> splitWorkers = new ArrayList<Worker>();
+    private final ThreadLocal<Worker> splitWorker = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            Worker w = new Worker(0);
+            w.split = true;
+            synchronized (splitWorkers) {
+                w.id = splitWorkers.size() + 1;
+                splitWorkers.add(w);
+            }
+            return w;
+        }
+    };
+
+    // the number of plies searched at most
+    public void setDepthLimit(int depthLimit) {
+        this.depthLimit = Math.max(1, Math.min(depthLimit, MAX_DEPTH));
+    }
+
+    // the search stops when the time is up; zero means no limit
+    public void setTimeLimit(long time, TimeUnit unit) {
+        setTimeLimits(time, time, unit);
+    }
+
+    /*
+     * No iteration is started after the soft limit. At the hard limit the
+     * iteration in progress is abandoned, in the middle of the tree; the
+     * move returned is then the best one it had found by then, which is
+     * the best move of the last completed iteration unless the unfinished
+     * one had already searched a better one in full. Zero means no limit.
+     */
+    public void setTimeLimits(long soft, long hard, TimeUnit unit) {
+        time.setLimits(unit.toNanos(soft), unit.toNanos(hard));
+    }
+
+    /*
+     * From the second iteration on, the root is searched with a window of
+     * this size around the previous score first, and only with the full
+     * window when the score falls outside it. Zero turns this off.
+     */
+    public void setAspirationWindow(int aspirationWindow) {
+        this.aspirationWindow = aspirationWindow;
+    }
+
+    // plain alpha-beta when off, to measure what the zero windows save
+    public void setPrincipalVariationSearch(boolean pvs) {
+        this.pvs = pvs;
+    }
+
+    /*
+     * Killer moves and the history heuristic. A wall that causes a cutoff
+     * becomes a killer for its ply, tried before the other walls in the
+     * other nodes of that ply, and every move that causes a cutoff adds
+     * depth * depth to its history score, by which the walls are ordered.
+     * Each thread has its own killers and history.
+     */
+    public void setKillersAndHistory(boolean killersAndHistory) {
+        this.killersAndHistory = killersAndHistory;
+    }
+
+    /*
+     * Quiet walls (see MoveGenerator.isQuiet) that come late in a node are
+     * searched one ply less deep with a zero window, and only searched
+     * again to the full depth when they beat alpha anyway.
+     */
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    /*
+     * At the last two plies, quiet walls are not searched when the
+     * evaluation plus FUTILITY_MARGIN is still no better than alpha.
+     */
+    public void setFutilityPruning(boolean futilityPruning) {
+        this.futilityPruning = futilityPruning;
+    }
+
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+        setThreads(Math.max(workers.length, pool == null ? 1 : pool.getParallelism()));
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    // null searches without one
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    // null searches every position
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // the number of threads that search at once, the calling thread included
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (table != null || threads == 1) {
+            workers = new Worker[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(i);
+            }
+        }
+        else {
+            workers = new Worker[]{new Worker(0)};
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /*
+     * Searches the state for the player to move and returns the best move
+     * found, as a MoveCode. The state is not modified. A search still
+     * pondering is abandoned first.
+     */
+    public int search(GameState2P state, int side) {
+        stopPondering();
+        time.start();
+        return iterate(state, side);
+    }
+
+    // the search, once the clock is started, and its statistics
+    private int iterate(GameState2P state, int side) {
+        long start = System.nanoTime();
+        long probes = table == null ? 0 : table.getProbes();
+        long hits = table == null ? 0 : table.getHits();
+        long stores = table == null ? 0 : table.getStores();
+        DistanceCache cache = GameState2P.getDistanceCache();
+        long cacheHits = cache.getHits();
+        long cacheMisses = cache.getMisses();
+
+        int move = choose(state, side);
+
+        Worker w = workers[0];
+        SearchStats s = new SearchStats();
+        s.source = w.source;
+        s.move = move;
+        s.score = w.bestScore;
+        s.depth = w.completedDepth;
+        s.elapsed = System.nanoTime() - start;
+        long[] counters = counters();
+        s.nodes = counters[0];
+        s.leafEvaluations = counters[1];
+        s.cutoffs = counters[2];
+        s.firstMoveCutoffs = counters[3];
+        s.iterationNodes = new long[w.iterations];
+        s.iterationTimes = new long[w.iterations];
+        System.arraycopy(w.iterationNodes, 0, s.iterationNodes, 0, w.iterations);
+        System.arraycopy(w.iterationTimes, 0, s.iterationTimes, 0, w.iterations);
+        if (table != null) {
+            s.tableProbes = table.getProbes() - probes;
+            s.tableHits = table.getHits() - hits;
+            s.tableStores = table.getStores() - stores;
+        }
+        s.cacheHits = cache.getHits() - cacheHits;
+        s.cacheMisses = cache.getMisses() - cacheMisses;
+        stats = s;
+        return move;
+    }
+
+    // the book's move, the solved one or the one the search finds
+    private int choose(GameState2P state, int side) {
+
+        // Entries left from earlier moves are kept, but replaced first.
+        if (table != null) {
+            table.newSearch();
+        }
+        synchronized (splitWorkers) {
+            for (Worker w : splitWorkers) {
+                w.clearCounters();
+                w.stopped = false;
+            }
+        }
+
+        MoveList rootMoves = new MoveList();
+        state.generateMoves(side, rootMoves);
+
+        Thread[] helpers = new Thread[workers.length - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].reset(state, side, rootMoves);
+        }
+        long entry = book == null ? 0 : book.probe(state, side);
+        if (entry != 0) {
+            workers[0].play(entry);
+            return workers[0].bestMove;
+        }
+        if (!state.isGameOver() && (RaceSolver.isRace(state) || tablebase != null && tablebase.bestMove(state, side) != MoveCode.NONE)) {
+            workers[0].solve(state, side);
+            return workers[0].bestMove;
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Thread(workers[i + 1], "search-" + (i + 1));
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+        workers[0].run();
+
+        // The helpers abandon the iteration they are in; it is not stored.
+        for (int i = 1; i < workers.length; i++) {
+            workers[i].stopped = true;
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                helpers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return workers[0].bestMove;
+    }
+
+    /*
+     * The reply the opponent is expected to make after the player makes
+     * the move, as stored in the table by the last search, or NONE if
+     * there is none.
+     */
+    public int expectedReply(GameState2P state, int side, int move) {
+        if (table == null) {
+            return MoveCode.NONE;
+        }
+        GameState2P s = new GameState2P(state);
+        s.apply(move, side);
+        long entry = table.probe(s.key(1 - side));
+        int reply = entry == 0 ? MoveCode.NONE : TranspositionTable.move(entry);
+        // checked, as two positions can share a key
+        MoveList moves = new MoveList();
+        s.generateMoves(1 - side, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == reply) {
+                return reply;
+            }
+        }
+        return MoveCode.NONE;
+    }
+
+    /*
+     * Starts searching the state for the player in a background thread,
+     * without a time limit, until ponderHit or stopPondering is called.
+     * The state must not be modified meanwhile.
+     */
+    public void ponder(final GameState2P state, final int side) {
+        stopPondering();
+        time.setPondering(true);
+        time.start();
+        ponderThread = new Thread("ponder") {
+            public void run() {
+                ponderMove = iterate(state, side);
+            }
+        };
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /*
+     * The position being pondered has come up: the time limits now apply,
+     * counted from now, and the move the search finds is returned. If it
+     * already reached the depth limit, that is at once.
+     */
+    public int ponderHit() {
+        time.setPondering(false);
+        return joinPonderThread();
+    }
+
+    // abandons the background search, if there is one
+    public void stopPondering() {
+        if (ponderThread != null) {
+            time.abort();
+            joinPonderThread();
+        }
+    }
+
+    public boolean isPondering() {
+        return ponderThread != null;
+    }
+
+    private int joinPonderThread() {
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+        time.setPondering(false);
+        return ponderMove;
+    }
+
+    // the score of the move returned by the last search
+    public int getScore() {
+        return workers[0].bestScore;
+    }
+
+    // the last depth the calling thread completed
+    public int getDepth() {
+        return workers[0].completedDepth;
+    }
+
+    public long getNodes() {
+        return counters()[0];
+    }
+
+    // what the last search did; it is only complete once the search has returned
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    // the nodes, leaf evaluations, cutoffs and first-move cutoffs of all threads
+    private long[] counters() {
+        long[] counters = new long[4];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].addCounters(counters);
+        }
+        synchronized (splitWorkers) {
+            for (Worker w : splitWorkers) {
+                w.addCounters(counters);
+            }
+        }
+        return counters;
+    }
+
+    public long getCutoffs() {
+        long cutoffs = 0;
+        for (int i = 0; i < workers.length; i++) {
+            cutoffs += workers[i].cutoffs;
+        }
+        return cutoffs;
+    }
+
+    /*
+     * The fraction of cutoffs, in the calling thread and its Lazy SMP
+     * helpers, caused by the first move tried.
+     */
+    public double firstMoveCutoffRate() {
+        long first = 0;
+        for (int i = 0; i < workers.length; i++) {
+            first += workers[i].firstMoveCutoffs;
+        }
+        long cutoffs = getCutoffs();
+        return cutoffs == 0 ? 0 : (double) first / cutoffs;
+    }
+
+    // one line per thread: depth reached, nodes and nodes per second
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < workers.length; i++) {
+            sb.append(i == 0 ? "" : "\n").append(workers[i]);
+        }
+        synchronized (splitWorkers) {
+            for (Worker w : splitWorkers) {
+                w.elapsed = workers[0].elapsed;
+                sb.append("\n").append(w);
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+     * One thread's search: its own working copy of the state, move
+     * generators and statistics.
+     *
+     * Under Lazy SMP each thread runs the whole iterative deepening,
+     * sharing only the transposition table. Odd helpers start one ply
+     * deeper and every helper starts at a different root move, so the
+     * threads spread out over the tree instead of searching the same nodes
+     * at the same time. What a helper finds reaches the calling thread
+     * through the table; the move played is the one the calling thread
+     * chooses.
+     */
+    private class Worker implements Runnable {
+
+        private int id;
+        // a fork/join thread, which only searches the tasks it is given
+        private boolean split;
+        private final SearchStack stack = new SearchStack();
+
+        private MoveList rootMoves;
+        private int side;
+        private GameState2P s;
+
+        // set when the thread has to stop: at the hard time limit, or for a helper when the calling thread is done
+        private volatile boolean stopped;
+
+        private int completedDepth;
+        private int bestMove;
+        private int bestScore;
+        private String source;
+        private long nodes;
+        private long elapsed;
+        private long evaluations;
+        private long cutoffs;
+        private long firstMoveCutoffs;
+        private long reductions;
+        private long futilePrunes;
+
+        // two killer moves per ply, and the history scores of both players' moves
+        private final int[][] killers = new int[MAX_DEPTH + 1][2];
+        private final int[][] history = new int[2][MoveCode.MAX_CODES];
+
+        // the nodes of all threads and the time of each iteration, only kept by workers[0]
+        private final long[] iterationNodes = new long[MAX_DEPTH];
+        private final long[] iterationTimes = new long[MAX_DEPTH];
+        private int iterations;
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        void reset(GameState2P state, int side, MoveList moves) {
+            this.side = side;
+            // working copy which the search modifies with apply/undo
+            s = new GameState2P(state);
+            // helpers start at a different root move
+            rootMoves = new MoveList(moves.size());
+            for (int i = 0; i < moves.size(); i++) {
+                rootMoves.add(moves.get((i + id) % moves.size()));
+            }
+            stopped = false;
+            completedDepth = 0;
+            bestMove = rootMoves.isEmpty() ? MoveCode.NONE : rootMoves.get(0);
+            bestScore = 0;
+            source = SearchStats.SEARCHED;
+            iterations = 0;
+            clearCounters();
+            // killers are only good within a search; history is kept, but counts for less
+            for (int i = 0; i < killers.length; i++) {
+                killers[i][0] = MoveCode.NONE;
+                killers[i][1] = MoveCode.NONE;
+            }
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < MoveCode.MAX_CODES; j++) {
+                    history[i][j] >>= 1;
+                }
+            }
+        }
+
+        void clearCounters() {
+            nodes = 0;
+            evaluations = 0;
+            cutoffs = 0;
+            firstMoveCutoffs = 0;
+            reductions = 0;
+            futilePrunes = 0;
+        }
+
+        void addCounters(long[] counters) {
+            counters[0] += nodes;
+            counters[1] += evaluations;
+            counters[2] += cutoffs;
+            counters[3] += firstMoveCutoffs;
+        }
+
+        // takes the race solver's or the tablebase's move, as if the game had been searched to its end
+        void solve(GameState2P state, int side) {
+            source = SearchStats.SOLVED;
+            if (RaceSolver.isRace(state)) {
+                bestMove = RaceSolver.bestMove(state, side);
+                bestScore = RaceSolver.score(state, side);
+                completedDepth = RaceSolver.length(state, side);
+            }
+            else {
+                bestMove = tablebase.bestMove(state, side);
+                bestScore = tablebase.score(state, side);
+                completedDepth = tablebase.plies(state, side);
+            }
+            nodes = 1;
+            elapsed = time.elapsed();
+        }
+
+        // takes the book's move, with the score and depth of the search that chose it
+        void play(long entry) {
+            source = SearchStats.BOOK;
+            bestMove = OpeningBook.move(entry);
+            bestScore = OpeningBook.score(entry);
+            completedDepth = OpeningBook.depth(entry);
+            nodes = 0;
+            elapsed = time.elapsed();
+        }
+
+        public void run() {
+            for (int depth = 1 + (id & 1); depth <= depthLimit && !stopped && !time.softTimeUp(); depth++) {
+                long start = System.nanoTime();
+                long nodesBefore = this == workers[0] ? getNodes() : 0;
+                int score;
+                if (aspirationWindow > 0 && completedDepth > 0) {
+                    int alpha = bestScore - aspirationWindow;
+                    int beta = bestScore + aspirationWindow;
+                    score = searchRoot(depth, alpha, beta);
+                    // fail low or high: the window cut off too much, search again with the full window
+                    if (score <= alpha || score >= beta) {
+                        score = searchRoot(depth, -INFINITY, INFINITY);
+                    }
+                }
+                else {
+                    score = searchRoot(depth, -INFINITY, INFINITY);
+                }
+                // an iteration cut short is counted too
+                if (this == workers[0]) {
+                    iterationNodes[iterations] = getNodes() - nodesBefore;
+                    iterationTimes[iterations] = System.nanoTime() - start;
+                    iterations++;
+                }
+                if (score == -INFINITY - 1) {
+                    break;
+                }
+                completedDepth = depth;
+            }
+            elapsed = time.elapsed();
+        }
+
+        /*
+         * Searches all root moves, the best one of the previous iteration
+         * first. A move that improves alpha within the window is taken as
+         * the best move at once, so the result of an iteration that runs
+         * out of time is still used. Returns the score, or -INFINITY - 1
+         * when the iteration was cut short.
+         */
+        private int searchRoot(int depth, int alpha, int beta) {
+            int best = -INFINITY;
+            for (int i = 0; i < rootMoves.size(); i++) {
+                int m = rootMoves.get(i);
+                // If we run out time we break out.
+                if (stopped || time.hardTimeUp()) {
+                    return -INFINITY - 1;
+                }
+
+                s.apply(m, side);
+                int score;
+                if (i == 0 || !pvs) {
+                    score = -child(s, 1 - side, depth - 1, 1, -beta, -alpha);
+                }
+                else {
+                    score = -child(s, 1 - side, depth - 1, 1, -alpha - 1, -alpha);
+                    if (score > alpha && score < beta) {
+                        score = -child(s, 1 - side, depth - 1, 1, -beta, -alpha);
+                    }
+                }
+                s.undo(m, side);
+                // the score of an abandoned search is not used
+                if (stopped || time.isAborted()) {
+                    return -INFINITY - 1;
+                }
+
+                if (score > best) {
+                    best = score;
+                }
+                if (score > alpha && score < beta) {
+                    alpha = score;
+                    bestMove = m;
+                    bestScore = score;
+                    // keep the best move in front for the next iteration
+                    for (int j = i; j > 0; j--) {
+                        rootMoves.swap(j, j - 1);
+                    }
+                }
+                else if (score >= beta) {
+                    return score;
+                }
+            }
+            return best;
+        }
+
+        // the score of a child of the root, split over the pool if there is one
+        private int child(GameState2P s, int side, int depth, int ply, int alpha, int beta) {
+            if (pool != null && depth >= MIN_SPLIT_DEPTH) {
+                return pool.invoke(new SplitTask(s, side, depth, ply, alpha, beta, null));
+            }
+            return negamax(s, side, depth, ply, alpha, beta);
+        }
+
+        private void cutoff(int move, int side, int depth, int ply, boolean first) {
+            cutoffs++;
+            if (first) {
+                firstMoveCutoffs++;
+            }
+            if (!killersAndHistory) {
+                return;
+            }
+            if (MoveCode.isWall(move) && killers[ply][0] != move) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = move;
+            }
+            int[] h = history[side];
+            h[move] += depth * depth;
+            if (h[move] > MAX_HISTORY) {
+                for (int i = 0; i < h.length; i++) {
+                    h[i] >>= 1;
+                }
+            }
+        }
+
+        public String toString() {
+            double nps = elapsed == 0 ? 0.0 : nodes * 1e9 / elapsed;
+            if (split) {
+                return String.format("Split thread %d: %d nodes, %.0f nodes/s", id, nodes, nps);
+            }
+            return String.format("Thread %d: depth %d, %d nodes, %.0f nodes/s, first-move cutoffs: %.1f%%, reduced: %d, futile: %d",
+                    id, completedDepth, nodes, nps, cutoffs == 0 ? 0.0 : 100.0 * firstMoveCutoffs / cutoffs,
+                    reductions, futilePrunes);
+        }
+
+        /*
+         * The score of the state for the player to move, searched to the
+         * given depth within the window (alpha, beta). Scores outside the
+         * window are bounds: at most alpha when all moves fail low, at least
+         * beta on a cutoff.
+         */
+        int negamax(GameState2P state, int side, int depth, int ply, int alpha, int beta) {
+            if ((++nodes & (TimeManager.CHECK_INTERVAL - 1)) == 0 && time.hardTimeUp()) {
+                stopped = true;
+            }
+            // an abandoned search returns at once; its callers discard the score
+            if (stopped) {
+                return 0;
+            }
+            if (state.isGameOver()) {
+                evaluations++;
+                return state.evaluate(side);
+            }
+            // a perfect leaf, however much depth is left
+            if (RaceSolver.isRace(state)) {
+                return RaceSolver.score(state, side);
+            }
+            if (tablebase != null) {
+                int score = tablebase.score(state, side);
+                if (score != Tablebase.UNKNOWN) {
+                    return score;
+                }
+            }
+            if (depth == 0) {
+                evaluations++;
+                return state.evaluate(side);
+            }
+
+            // If the state was searched at least as deep before and the stored bound decides this window,
+            // return the stored score. Otherwise its best move is tried first.
+            long key = 0;
+            int ttMove = MoveCode.NONE;
+            if (table != null) {
+                key = state.key(side);
+                long entry = table.probe(key);
+                if (entry != 0) {
+                    ttMove = TranspositionTable.move(entry);
+                    if (TranspositionTable.depth(entry) >= depth) {
+                        int stored = TranspositionTable.score(entry);
+                        int bound = TranspositionTable.bound(entry);
+                        if (bound == TranspositionTable.EXACT
+                                || (bound == TranspositionTable.LOWER && stored >= beta)
+                                || (bound == TranspositionTable.UPPER && stored <= alpha)) {
+                            return stored;
+                        }
+                    }
+                }
+            }
+
+            MoveGenerator generator = stack.generator(depth);
+            if (killersAndHistory) {
+                generator.reset(state, side, ttMove, killers[ply][0], killers[ply][1], history[side]);
+            }
+            else {
+                generator.reset(state, side, ttMove);
+            }
+
+            // Near the leaves, quiet walls are not searched when even the margin leaves them below alpha.
+            boolean futile = false;
+            int futileScore = 0;
+            if (futilityPruning && depth < FUTILITY_MARGIN.length) {
+                futileScore = state.evaluate(side) + FUTILITY_MARGIN[depth];
+                futile = futileScore <= alpha;
+            }
+
+            int alphaOrig = alpha;
+            int res = -INFINITY;
+            int bestMove = MoveCode.NONE;
+            MoveList sorted = null;
+            int next = 0;
+            int tried = 0;
+            boolean first = true;
+            int move = generator.next();
+            while (move != MoveCode.NONE) {
+                boolean quiet = (futile || lateMoveReductions) && generator.isQuiet(move);
+                if (futile && quiet) {
+                    // its score is at most futileScore
+                    res = Math.max(res, futileScore);
+                    futilePrunes++;
+                }
+                else {
+                    int reduction = 0;
+                    if (lateMoveReductions && quiet && tried >= LMR_MIN_MOVES && depth >= LMR_MIN_DEPTH
+                            && move != ttMove && move != killers[ply][0] && move != killers[ply][1]) {
+                        reduction = 1;
+                        reductions++;
+                    }
+                    state.apply(move, side);
+                    int score = Integer.MAX_VALUE;
+                    if (reduction > 0) {
+                        score = -negamax(state, 1 - side, depth - 1 - reduction, ply + 1, -alpha - 1, -alpha);
+                    }
+                    // a reduced move that beats alpha anyway is searched to the full depth
+                    if (score > alpha) {
+                        score = searchChild(state, side, depth, ply, alpha, beta, first);
+                    }
+                    state.undo(move, side);
+                    // the score of an abandoned child is not used, nor does it count as a cutoff
+                    if (stopped) {
+                        break;
+                    }
+                    if (score > res) {
+                        res = score;
+                        bestMove = move;
+                    }
+                    alpha = Math.max(alpha, score);
+                    if (alpha >= beta) {
+                        cutoff(move, side, depth, ply, first);
+                        break;
+                    }
+                }
+                tried++;
+                first = false;
+                if (table != null && sorted == null) {
+                    // With a table, the remaining moves are sorted by the stored scores of the states they lead to.
+                    sorted = stack.moveList(depth);
+                    generator.remaining(sorted);
+                    sortByChildScore(state, sorted, side);
+                }
+                if (sorted != null) {
+                    move = next < sorted.size() ? sorted.get(next++) : MoveCode.NONE;
+                }
+                else {
+                    move = generator.next();
+                }
+            }
+
+            if (table != null && !stopped) {
+                int bound;
+                if (res <= alphaOrig) {
+                    bound = TranspositionTable.UPPER;
+                } else if (res >= beta) {
+                    bound = TranspositionTable.LOWER;
+                } else {
+                    bound = TranspositionTable.EXACT;
+                }
+                table.store(key, res, depth, bound, bestMove);
+            }
+            return res;
+        }
+
+        /*
+         * The score, for the player, of the child the player just moved to.
+         * The first move of a node gets the full window; with PVS the others
+         * get a zero window first.
+         */
+        private int searchChild(GameState2P state, int side, int depth, int ply, int alpha, int beta, boolean first) {
+            if (first || !pvs) {
+                return -negamax(state, 1 - side, depth - 1, ply + 1, -beta, -alpha);
+            }
+            int score = -negamax(state, 1 - side, depth - 1, ply + 1, -alpha - 1, -alpha);
+            if (score > alpha && score < beta) {
+                score = -negamax(state, 1 - side, depth - 1, ply + 1, -beta, -alpha);
+            }
+            return score;
+        }
+    }
+
+    /*
+     * Sorts the moves best first for the player by the stored scores of the
+     * states they lead to: the lowest score for the opponent first, and the
+     * moves whose state is not in the table last. Each move is probed once,
+     * by the key its state would have, so no child state is built.
+     */
+    private void sortByChildScore(GameState2P state, MoveList moves, int side) {
+        for (int i = 0; i < moves.size(); i++) {
+            long entry = table.probe(state.keyAfter(moves.get(i), side));
+            moves.setScore(i, entry != 0 ? -TranspositionTable.score(entry) : Integer.MIN_VALUE);
+        }
+        moves.sortByScore();
+    }
+
+    /*
+     * Parallel negamax with the Young Brothers Wait rule: the eldest child
+     * of a node is searched first, by the thread that owns the node, and
+     * only then are its younger brothers forked, with a zero window around
+     * the alpha the eldest left. A brother that fails high is searched
+     * again with the full window when it is joined.
+     *
+     * When a brother causes a cutoff, the others are cancelled. Brothers
+     * that have not started never run; those that have, and all tasks below
+     * them, see the cancelled flag of an ancestor and return at once. Their
+     * results are never used.
+     *
+     * A task owns its state. The eldest child is searched on the same state
+     * with apply/undo before anything is forked; each brother gets a copy.
+     */
+    private class SplitTask extends RecursiveTask<Integer> {
+
+        // tasks are never serialized, but RecursiveTask is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final GameState2P s;
+        private final int side;
+        private final int depth;
+        private final int ply;
+        private final int alpha;
+        private final int beta;
+        private final SplitTask parent;
+        private volatile boolean cancelled;
+
+        SplitTask(GameState2P s, int side, int depth, int ply, int alpha, int beta, SplitTask parent) {
+            this.s = s;
+            this.side = side;
+            this.depth = depth;
+            this.ply = ply;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.parent = parent;
+        }
+
+        private boolean isAborted() {
+            if (time.isAborted()) {
+                return true;
+            }
+            for (SplitTask t = this; t != null; t = t.parent) {
+                if (t.cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (isAborted()) {
+                return 0;
+            }
+            Worker w = splitWorker.get();
+            if (depth < MIN_SPLIT_DEPTH || s.isGameOver() || RaceSolver.isRace(s) || tablebase != null && tablebase.covers(s)) {
+                return w.negamax(s, side, depth, ply, alpha, beta);
+            }
+            w.nodes++;
+
+            MoveGenerator generator = new MoveGenerator(s, side, MoveCode.NONE);
+
+            // the eldest brother
+            int eldest = generator.next();
+            if (eldest == MoveCode.NONE) {
+                return -INFINITY;
+            }
+            s.apply(eldest, side);
+            int res = -new SplitTask(s, 1 - side, depth - 1, ply + 1, -beta, -alpha, this).compute();
+            s.undo(eldest, side);
+            int a = Math.max(alpha, res);
+            if (a >= beta || isAborted()) {
+                return res;
+            }
+
+            // the younger brothers, in parallel
+            MoveList moves = new MoveList();
+            generator.remaining(moves);
+            int forkAlpha = a;
+            SplitTask[] brothers = new SplitTask[moves.size()];
+            for (int i = 0; i < brothers.length; i++) {
+                GameState2P child = new GameState2P(s);
+                child.apply(moves.get(i), side);
+                int lo = pvs ? -forkAlpha - 1 : -beta;
+                brothers[i] = new SplitTask(child, 1 - side, depth - 1, ply + 1, lo, -forkAlpha, this);
+                brothers[i].fork();
+            }
+            for (int i = 0; i < brothers.length; i++) {
+                int score = -brothers[i].join();
+                if (pvs && score > forkAlpha && score < beta && !isAborted()) {
+                    score = -new SplitTask(brothers[i].s, 1 - side, depth - 1, ply + 1, -beta, -a, this).compute();
+                }
+                res = Math.max(res, score);
+                a = Math.max(a, score);
+                if (a >= beta || isAborted()) {
+                    for (int j = i + 1; j < brothers.length; j++) {
+                        brothers[j].cancelled = true;
+                        brothers[j].cancel(false);
+                    }
+                    break;
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package players;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the searches of a player through JMX, under the name
+ * quoridor:type=Search,player=<the player's class>-<its index>, so that a
+ * console can watch the engine think. Every player of the same class and
+ * index, such as those of the games of a tournament, shares one monitor.
+ *
+ * @author steven
+ */
+public class SearchMonitor implements SearchMonitorMXBean {
+
+    private static final Map<String, SearchMonitor> monitors = new HashMap<String, SearchMonitor>();
+
+    private long searches;
+    private long totalNodes;
+    private long totalDepth;
+    private SearchStats lastSearch = new SearchStats();
+
+    private SearchMonitor() {
+    }
+
+    /*
+     * The monitor of the given name, registered with the platform MBean
+     * server when it is first asked for. If it cannot be registered it
+     * still counts the searches.
+     */
+    public static synchronized SearchMonitor get(String player) {
+        SearchMonitor monitor = monitors.get(player);
+        if (monitor == null) {
+            monitor = new SearchMonitor();
+            monitors.put(player, monitor);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(monitor,
+                        new ObjectName("quoridor:type=Search,player=" + player));
+            } catch (JMException e) {
+                System.err.println("Cannot publish the searches of " + player + ": " + e.getMessage());
+            }
+        }
+        return monitor;
+    }
+
+    public synchronized void add(SearchStats stats) {
+        searches++;
+        totalNodes += stats.getNodes();
+        totalDepth += stats.getDepth();
+        lastSearch = stats;
+    }
+
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    public synchronized long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public synchronized double getMeanDepth() {
+        return searches == 0 ? 0 : (double) totalDepth / searches;
+    }
+
+    public synchronized SearchStats getLastSearch() {
+        return lastSearch;
+    }
+}
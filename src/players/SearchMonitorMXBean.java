@@ -0,0 +1,18 @@
+package players;
+
+/**
+ * The JMX view of a SearchMonitor: the totals over all searches of the
+ * players it watches, and everything the last of those searches did.
+ *
+ * @author steven
+ */
+public interface SearchMonitorMXBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    double getMeanDepth();
+
+    SearchStats getLastSearch();
+}
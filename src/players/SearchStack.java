@@ -0,0 +1,44 @@
+package players;
+
+import moves.MoveList;
+import quoridor.MoveGenerator;
+
+/**
+ * Move generators and move lists for one search, one per remaining depth.
+ * Two nodes on the line being searched never have the same remaining
+ * depth, so they can be reused from node to node and the search does not
+ * allocate for its moves. A stack belongs to one thread.
+ *
+ * @author steven
+ */
+class SearchStack {
+
+    private MoveGenerator[] generators = new MoveGenerator[0];
+    private MoveList[] moveLists = new MoveList[0];
+
+    MoveGenerator generator(int depth) {
+        if (depth >= generators.length) {
+            MoveGenerator[] grown = new MoveGenerator[depth + 8];
+            System.arraycopy(generators, 0, grown, 0, generators.length);
+            for (int i = generators.length; i < grown.length; i++) {
+                grown[i] = new MoveGenerator();
+            }
+            generators = grown;
+        }
+        return generators[depth];
+    }
+
+    // an empty move list for a node with the given remaining depth
+    MoveList moveList(int depth) {
+        if (depth >= moveLists.length) {
+            MoveList[] grown = new MoveList[depth + 8];
+            System.arraycopy(moveLists, 0, grown, 0, moveLists.length);
+            for (int i = moveLists.length; i < grown.length; i++) {
+                grown[i] = new MoveList();
+            }
+            moveLists = grown;
+        }
+        moveLists[depth].clear();
+        return moveLists[depth];
+    }
+}
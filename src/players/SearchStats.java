@@ -0,0 +1,161 @@
+package players;
+
+import moves.MoveCode;
+
+/**
+ * What one search did, to see where its time went: the nodes and time of
+ * each iteration, leaf evaluations, beta cutoffs, transposition table and
+ * distance cache use. SearchEngine and MonteCarloSearch fill one in at the
+ * end of every search; the players log it and publish it through JMX (see
+ * SearchMonitor).
+ *
+ * The counts are over all search threads. Those of the transposition
+ * table and the distance cache are the differences of their counters
+ * between the start and the end of the search, so the distance cache,
+ * which the whole JVM shares, also counts lookups by other searches
+ * running at the same time.
+ *
+ * @author steven
+ */
+public class SearchStats {
+
+    // how the move was found
+    public static final String SEARCHED = "search";
+    public static final String BOOK = "book";
+    public static final String SOLVED = "solved";
+    public static final String PLAYOUTS = "playouts";
+
+    String source = SEARCHED;
+    int move = MoveCode.NONE;
+    int score;
+    int depth;
+    long nodes;
+    long elapsed;
+
+    // by iteration, from depth 1: the nodes it searched and the time it took
+    long[] iterationNodes = new long[0];
+    long[] iterationTimes = new long[0];
+
+    long leafEvaluations;
+    long cutoffs;
+    long firstMoveCutoffs;
+    long tableProbes;
+    long tableHits;
+    long tableStores;
+    long cacheHits;
+    long cacheMisses;
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getMove() {
+        return MoveCode.toString(move);
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    // the last completed depth; for a solved position, the plies to its end
+    public int getDepth() {
+        return depth;
+    }
+
+    // nodes searched, or playouts for a Monte Carlo search
+    public long getNodes() {
+        return nodes;
+    }
+
+    // in nanoseconds
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    public double getNodesPerSecond() {
+        return elapsed == 0 ? 0 : nodes * 1e9 / elapsed;
+    }
+
+    // the nodes of each iteration, the first one at depth 1; the last may not have completed
+    public long[] getNodesPerDepth() {
+        return iterationNodes.clone();
+    }
+
+    public double[] getMillisPerDepth() {
+        double[] millis = new double[iterationTimes.length];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = iterationTimes[i] / 1e6;
+        }
+        return millis;
+    }
+
+    /*
+     * The nodes of the last completed iteration divided by those of the
+     * one before: how much each further ply costs, the number to watch
+     * when the search stalls at a depth. Zero before depth 2.
+     */
+    public double getEffectiveBranchingFactor() {
+        if (depth < 2 || depth > iterationNodes.length || iterationNodes[depth - 2] == 0) {
+            return 0;
+        }
+        return (double) iterationNodes[depth - 1] / iterationNodes[depth - 2];
+    }
+
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getBetaCutoffs() {
+        return cutoffs;
+    }
+
+    // the fraction of cutoffs caused by the first move tried
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getTableStores() {
+        return tableStores;
+    }
+
+    public double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    public long getDistanceCacheHits() {
+        return cacheHits;
+    }
+
+    public double getDistanceCacheHitRate() {
+        return cacheHits + cacheMisses == 0 ? 0 : (double) cacheHits / (cacheHits + cacheMisses);
+    }
+
+    // one line, for the log
+    public String toString() {
+        if (source.equals(PLAYOUTS)) {
+            return String.format("%s %s: %d playouts in %.0f ms (%.0f/s), distance cache %.1f%% hits",
+                    source, getMove(), nodes, elapsed / 1e6, getNodesPerSecond(), 100 * getDistanceCacheHitRate());
+        }
+        StringBuilder sb = new StringBuilder(String.format(
+                "%s %s score %d depth %d: %d nodes in %.0f ms (%.0f/s), %d leaves, %d cutoffs (%.1f%% first),"
+                        + " TT %d probes (%.1f%% hits) %d stores, distance cache %.1f%% hits, EBF %.2f",
+                source, getMove(), score, depth, nodes, elapsed / 1e6, getNodesPerSecond(), leafEvaluations, cutoffs,
+                100 * getFirstMoveCutoffRate(), tableProbes, 100 * getTableHitRate(), tableStores,
+                100 * getDistanceCacheHitRate(), getEffectiveBranchingFactor()));
+        if (iterationNodes.length > 0) {
+            sb.append(", iterations");
+            for (int i = 0; i < iterationNodes.length; i++) {
+                sb.append(String.format(" %d:%d/%.0fms", i + 1, iterationNodes[i], iterationTimes[i] / 1e6));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package players;
+
+/**
+ * The time limits of one search. After the soft limit no new iteration is
+ * started; at the hard limit the search stops where it is. The search
+ * threads poll the hard limit every CHECK_INTERVAL nodes, so the clock is
+ * read rarely enough not to show in the node rate. Once one thread sees
+ * the hard limit, all of them are aborted.
+ *
+ * While the engine ponders, the limits do not apply; they count from the
+ * moment pondering ends, and until then only abort stops the search.
+ *
+ * @author steven
+ */
+class TimeManager {
+
+    // a power of two; nodes between two looks at the clock
+    static final int CHECK_INTERVAL = 1 << 10;
+
+    private long softLimit;
+    private long hardLimit;
+    private volatile long startTime;
+    private volatile boolean pondering;
+    private volatile boolean aborted;
+
+    // zero means no limit
+    void setLimits(long softLimit, long hardLimit) {
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+    }
+
+    void start() {
+        startTime = System.nanoTime();
+        aborted = false;
+    }
+
+    // when pondering is switched off, the clock starts again from now
+    void setPondering(boolean pondering) {
+        if (!pondering) {
+            startTime = System.nanoTime();
+        }
+        this.pondering = pondering;
+    }
+
+    void abort() {
+        aborted = true;
+    }
+
+    long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    // whether to start another iteration
+    boolean softTimeUp() {
+        return aborted || (!pondering && softLimit > 0 && elapsed() >= softLimit);
+    }
+
+    // whether to stop now; aborts the search when the hard limit is reached
+    boolean hardTimeUp() {
+        if (!aborted && !pondering && hardLimit > 0 && elapsed() >= hardLimit) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+}
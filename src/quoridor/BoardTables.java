@@ -0,0 +1,418 @@
+package quoridor;
+
+import java.util.Arrays;
+
+/**
+ * The tables derived from a wall structure: which pawn moves are legal from
+ * every cell and the shortest path from every cell to the top and bottom
+ * rows. They only depend on the walls, so states with the same walls share
+ * one instance and never modify it.
+ *
+ * @author steven
+ */
+class BoardTables {
+
+    //the walls these tables were computed for
+    final long horizontal;
+    final long vertical;
+
+    final int width;
+    final int height;
+
+    /*
+     * The following bitboards encode which moves are legal across the board,
+     * with bit r*width+c set when the move from cell (r,c) is allowed. The
+     * default board needs a single word per direction, 9 by 9 two.
+     */
+    final long[] leftLegal;
+    final long[] rightLegal;
+    final long[] upLegal;
+    final long[] downLegal;
+
+    /*
+     * The shortest path from each cell to the top and bottom rows, indexed
+     * like the masks and -1 where the row cannot be reached. It is used for
+     * the heuristic evaluation by the computer player and to find out which
+     * wall positions are legal
+     */
+    final int[] distanceToTop;
+    final int[] distanceToBottom;
+
+    BoardTables(WallStructure walls) {
+        horizontal = walls.horizontal;
+        vertical = walls.vertical;
+        width = walls.width;
+        height = walls.height;
+
+        int words = (width * height + 63) >>> 6;
+        leftLegal = new long[words];
+        rightLegal = new long[words];
+        upLegal = new long[words];
+        downLegal = new long[words];
+        initLegalMasks();
+
+        distanceToTop = new int[width * height];
+        distanceToBottom = new int[width * height];
+        initDistances(distanceToTop, height - 1);
+        initDistances(distanceToBottom, 0);
+    }
+
+    /*
+     * Derives the tables for walls, which are the walls of parent plus the
+     * wall added in the given slot. Only the two masks crossed by the new wall are copied, and
+     * the distances are repaired around the two blocked edges rather than
+     * recomputed for the whole board.
+     */
+    BoardTables(BoardTables parent, WallStructure walls, boolean isHorizontal, int p) {
+        horizontal = walls.horizontal;
+        vertical = walls.vertical;
+        width = walls.width;
+        height = walls.height;
+
+        int cell = (p / (width - 1)) * width + p % (width - 1);
+        int[] from = new int[2];
+        int[] to = new int[2];
+        if (isHorizontal) {
+            leftLegal = parent.leftLegal;
+            rightLegal = parent.rightLegal;
+            upLegal = parent.upLegal.clone();
+            downLegal = parent.downLegal.clone();
+            blockVertically(cell);
+            from[0] = cell;
+            to[0] = cell + width;
+            from[1] = cell + 1;
+            to[1] = cell + width + 1;
+        }
+        else {
+            upLegal = parent.upLegal;
+            downLegal = parent.downLegal;
+            leftLegal = parent.leftLegal.clone();
+            rightLegal = parent.rightLegal.clone();
+            blockHorizontally(cell);
+            from[0] = cell;
+            to[0] = cell + 1;
+            from[1] = cell + width;
+            to[1] = cell + width + 1;
+        }
+
+        distanceToTop = parent.distanceToTop.clone();
+        distanceToBottom = parent.distanceToBottom.clone();
+        repairDistances(distanceToTop, height - 1, from, to);
+        repairDistances(distanceToBottom, 0, from, to);
+    }
+
+    // the same masks mean other walls on a board of another size
+    boolean matches(WallStructure walls) {
+        return horizontal == walls.horizontal && vertical == walls.vertical
+                && width == walls.width && height == walls.height;
+    }
+
+    boolean moveUpLegal(int r, int c) {
+        return isSet(upLegal, r * width + c);
+    }
+
+    boolean moveDownLegal(int r, int c) {
+        return isSet(downLegal, r * width + c);
+    }
+
+    boolean moveRightLegal(int r, int c) {
+        return isSet(rightLegal, r * width + c);
+    }
+
+    boolean moveLeftLegal(int r, int c) {
+        return isSet(leftLegal, r * width + c);
+    }
+
+    static boolean isSet(long[] mask, int i) {
+        return (mask[i >>> 6] & 1L << i) != 0;
+    }
+
+    static void set(long[] mask, int i) {
+        mask[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] mask, int i) {
+        mask[i >>> 6] &= ~(1L << i);
+    }
+
+    /*
+     * Builds the four legality masks: start from an open board with only
+     * the borders closed, then cut the two edges blocked by each wall.
+     */
+    private void initLegalMasks() {
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int cell = i * width + j;
+                if (j > 0) {
+                    set(leftLegal, cell);
+                }
+                if (j < width - 1) {
+                    set(rightLegal, cell);
+                }
+                if (i < height - 1) {
+                    set(upLegal, cell);
+                }
+                if (i > 0) {
+                    set(downLegal, cell);
+                }
+            }
+        }
+        for (long m = horizontal; m != 0; m &= m - 1) {
+            int p = Long.numberOfTrailingZeros(m);
+            blockVertically((p / (width - 1)) * width + p % (width - 1));
+        }
+        for (long m = vertical; m != 0; m &= m - 1) {
+            int p = Long.numberOfTrailingZeros(m);
+            blockHorizontally((p / (width - 1)) * width + p % (width - 1));
+        }
+    }
+
+    // horizontal wall between rows r and r+1, covering columns c and c+1
+    private void blockVertically(int cell) {
+        clear(upLegal, cell);
+        clear(upLegal, cell + 1);
+        clear(downLegal, cell + width);
+        clear(downLegal, cell + width + 1);
+    }
+
+    // vertical wall between columns c and c+1, covering rows r and r+1
+    private void blockHorizontally(int cell) {
+        clear(rightLegal, cell);
+        clear(rightLegal, cell + width);
+        clear(leftLegal, cell + 1);
+        clear(leftLegal, cell + width + 1);
+    }
+
+    /*
+     * Collects the cells reachable in one step from cell into neighbours
+     * and returns how many there are.
+     */
+    private int neighbours(int cell, int[] neighbours) {
+        int n = 0;
+        if (isSet(upLegal, cell)) {
+            neighbours[n++] = cell + width;
+        }
+        if (isSet(downLegal, cell)) {
+            neighbours[n++] = cell - width;
+        }
+        if (isSet(leftLegal, cell)) {
+            neighbours[n++] = cell - 1;
+        }
+        if (isSet(rightLegal, cell)) {
+            neighbours[n++] = cell + 1;
+        }
+        return n;
+    }
+
+    /*
+     * Marks the edges of one shortest path from cell to the goal row of
+     * distance: bit i of crossRows is set when the path steps between cells
+     * i and i+width, and bit i of crossCols when it steps between i and i+1.
+     */
+    void markShortestPath(int cell, int[] distance, long[] crossRows, long[] crossCols) {
+        int[] next = new int[4];
+        while (distance[cell] > 0) {
+            int n = neighbours(cell, next);
+            for (int k = 0; k < n; k++) {
+                if (distance[next[k]] == distance[cell] - 1) {
+                    int low = Math.min(cell, next[k]);
+                    if (Math.abs(next[k] - cell) == width) {
+                        set(crossRows, low);
+                    }
+                    else {
+                        set(crossCols, low);
+                    }
+                    cell = next[k];
+                    break;
+                }
+            }
+        }
+    }
+
+    /*
+     * Whether the goal row can still be reached from cell when the edges
+     * a1-b1 and a2-b2 are blocked as well. This is a breadth-first search
+     * which stops as soon as it gets to the goal row, so it is much cheaper
+     * than deriving the tables for the new wall.
+     */
+    boolean reachesGoal(int cell, int goalRow, int a1, int b1, int a2, int b2) {
+        int cells = width * height;
+        boolean[] seen = new boolean[cells];
+        int[] queue = new int[cells];
+        int[] next = new int[4];
+        int head = 0;
+        int tail = 0;
+        seen[cell] = true;
+        queue[tail++] = cell;
+        while (head < tail) {
+            int current = queue[head++];
+            if (current / width == goalRow) {
+                return true;
+            }
+            int n = neighbours(current, next);
+            for (int k = 0; k < n; k++) {
+                int other = next[k];
+                if (seen[other]
+                        || (current == a1 && other == b1) || (current == b1 && other == a1)
+                        || (current == a2 && other == b2) || (current == b2 && other == a2)) {
+                    continue;
+                }
+                seen[other] = true;
+                queue[tail++] = other;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Breadth-first search from every cell of the goal row, with an array
+     * as the queue.
+     */
+    private void initDistances(int[] distance, int goalRow) {
+        int[] queue = new int[distance.length];
+        int[] next = new int[4];
+        int head = 0;
+        int tail = 0;
+        Arrays.fill(distance, -1);
+        for (int j = 0; j < width; j++) {
+            distance[goalRow * width + j] = 0;
+            queue[tail++] = goalRow * width + j;
+        }
+        while (head < tail) {
+            int cell = queue[head++];
+            int n = neighbours(cell, next);
+            for (int k = 0; k < n; k++) {
+                if (distance[next[k]] == -1) {
+                    distance[next[k]] = distance[cell] + 1;
+                    queue[tail++] = next[k];
+                }
+            }
+        }
+    }
+
+    /*
+     * Repairs the distances of the parent after the edges from[i]-to[i] have
+     * been blocked. Distances can only grow, and only for cells whose every
+     * shortest path went through a blocked edge. Those cells are found first:
+     * a cell stays valid as long as some valid neighbour is one step closer
+     * to the goal row, and when a cell loses that support, its neighbours one
+     * step further away are checked in turn. The invalidated cells are then
+     * relaxed again from the valid cells around them. When most of the board
+     * is invalidated, a full breadth-first search is cheaper.
+     */
+    private void repairDistances(int[] distance, int goalRow, int[] from, int[] to) {
+        int cells = distance.length;
+        boolean[] invalid = new boolean[cells];
+        boolean[] queued = new boolean[cells];
+        int[] queue = new int[cells];
+        int[] next = new int[4];
+        int head = 0;
+        int size = 0;
+
+        for (int i = 0; i < from.length; i++) {
+            int a = from[i];
+            int b = to[i];
+            if (distance[a] > 0 && distance[a] == distance[b] + 1 && !queued[a]) {
+                queued[a] = true;
+                queue[(head + size++) % cells] = a;
+            }
+            if (distance[b] > 0 && distance[b] == distance[a] + 1 && !queued[b]) {
+                queued[b] = true;
+                queue[(head + size++) % cells] = b;
+            }
+        }
+
+        int nrInvalid = 0;
+        while (size > 0) {
+            int cell = queue[head];
+            head = (head + 1) % cells;
+            size--;
+            queued[cell] = false;
+            if (invalid[cell]) {
+                continue;
+            }
+            int n = neighbours(cell, next);
+            boolean supported = false;
+            for (int k = 0; k < n && !supported; k++) {
+                supported = !invalid[next[k]] && distance[next[k]] == distance[cell] - 1;
+            }
+            if (supported) {
+                continue;
+            }
+            invalid[cell] = true;
+            nrInvalid++;
+            // the neighbours may have depended on this cell; blocked edges
+            // are gone from the masks, so look at all four directions
+            int r = cell / width;
+            int c = cell % width;
+            for (int k = 0; k < 4; k++) {
+                int other;
+                if (k == 0 && r < height - 1) {
+                    other = cell + width;
+                }
+                else if (k == 1 && r > 0) {
+                    other = cell - width;
+                }
+                else if (k == 2 && c > 0) {
+                    other = cell - 1;
+                }
+                else if (k == 3 && c < width - 1) {
+                    other = cell + 1;
+                }
+                else {
+                    continue;
+                }
+                if (!invalid[other] && !queued[other] && distance[other] == distance[cell] + 1) {
+                    queued[other] = true;
+                    queue[(head + size++) % cells] = other;
+                }
+            }
+        }
+
+        if (nrInvalid == 0) {
+            return;
+        }
+        if (2 * nrInvalid > cells) {
+            initDistances(distance, goalRow);
+            return;
+        }
+
+        // seed every invalidated cell from its valid neighbours
+        for (int cell = 0; cell < cells; cell++) {
+            if (invalid[cell]) {
+                int best = -1;
+                int n = neighbours(cell, next);
+                for (int k = 0; k < n; k++) {
+                    int d = invalid[next[k]] ? -1 : distance[next[k]];
+                    if (d >= 0 && (best == -1 || d + 1 < best)) {
+                        best = d + 1;
+                    }
+                }
+                distance[cell] = best;
+                if (best >= 0) {
+                    queued[cell] = true;
+                    queue[(head + size++) % cells] = cell;
+                }
+            }
+        }
+
+        // relax among the invalidated cells until nothing improves
+        while (size > 0) {
+            int cell = queue[head];
+            head = (head + 1) % cells;
+            size--;
+            queued[cell] = false;
+            int n = neighbours(cell, next);
+            for (int k = 0; k < n; k++) {
+                int other = next[k];
+                if (invalid[other] && (distance[other] == -1 || distance[other] > distance[cell] + 1)) {
+                    distance[other] = distance[cell] + 1;
+                    if (!queued[other]) {
+                        queued[other] = true;
+                        queue[(head + size++) % cells] = other;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package quoridor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of BoardTables, keyed by the Zobrist key of the walls, which
+ * can be shared by any number of search threads.
+ *
+ * The cache is set-associative: a key maps to one set of WAYS slots and
+ * can live in any of them. Lookups take no lock. This is safe because
+ * BoardTables is immutable, so a reader sees either the old or the new
+ * tables of a slot. Inserts lock one of a fixed number of stripes and pick
+ * their slot with the CLOCK policy: a hand sweeps the set, sparing (and
+ * clearing) slots that were hit since it last passed.
+ *
+ * @author steven
+ */
+public class DistanceCache {
+
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 64;
+
+    private final BoardTables[] slots;
+    private final boolean[] referenced;
+    private final int[] hands;
+    private final int setMask;
+    private final Object[] locks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DistanceCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /*
+     * The capacity is rounded down to a power of two, and up to at least
+     * one set.
+     */
+    public DistanceCache(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+        slots = new BoardTables[sets * WAYS];
+        referenced = new boolean[sets * WAYS];
+        hands = new int[sets];
+        setMask = sets - 1;
+        locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private int set(long key) {
+        return (int) (key ^ key >>> 32) & setMask;
+    }
+
+    BoardTables get(WallStructure walls) {
+        int base = set(walls.key()) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            BoardTables tables = slots[i];
+            if (tables != null && tables.matches(walls)) {
+                referenced[i] = true;
+                hits.increment();
+                return tables;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(WallStructure walls, BoardTables tables) {
+        int set = set(walls.key());
+        int base = set * WAYS;
+        synchronized (locks[set & (STRIPES - 1)]) {
+            // another thread may have added the same tables meanwhile
+            for (int i = base; i < base + WAYS; i++) {
+                if (slots[i] == null) {
+                    slots[i] = tables;
+                    return;
+                }
+                if (slots[i].matches(walls)) {
+                    return;
+                }
+            }
+            int hand = hands[set];
+            while (referenced[base + hand]) {
+                referenced[base + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            slots[base + hand] = tables;
+            hands[set] = (hand + 1) % WAYS;
+            evictions.increment();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String toString() {
+        return String.format("Distance cache: %d entries, hits: %.1f%%, misses: %d, evictions: %d",
+                capacity(), 100 * hitRate(), getMisses(), getEvictions());
+    }
+}
@@ -1,6 +1,5 @@
 package quoridor;
 
-import java.util.ArrayList;
 import java.util.List;
 import moves.*;
 /**
@@ -9,12 +8,16 @@ import moves.*;
  */
 public class GameState2P {
 
+    //the default board: 5 by 5, with 5 walls per player
+    public static final int DEFAULT_SIZE = 5;
+    public static final int DEFAULT_WALLS_PER_PLAYER = 5;
+
     //dimensions of the board
-    private int width = 5;
-    private int height = 5;
+    private final int width;
+    private final int height;
 
     //number of walls each player can place
-    private int wallsPerPlayer = 5;
+    private final int wallsPerPlayer;
 
     //the collection of walls that are currently on the board
     private WallStructure assignedWalls;
@@ -24,36 +27,52 @@ public class GameState2P {
     private int[] col;
     private int[] nrWallsLeft;
 
+    // Zobrist key of the pawn positions and wall counts, see key()
+    private long playerKey;
+
     /*
-     * The shortest path from each cell to the top and bottom rows
-     * is used for the heuristic evaluation by the computer player
-     * and to find out which wall positions are legal
+     * The legality masks and shortest paths to the top and bottom rows
+     * for the current walls. They need to be recomputed every time a wall
+     * is added. This is computationally expensive. Moreover, in a naive
+     * implementation the same wall structures would be encountered over and
+     * over again. Therefore, we remember previously computed tables in a
+     * cache keyed by the walls. The cache is shared by every state in the
+     * JVM; its size can be set with the system property
+     * quoridor.distanceCacheEntries or replaced with setDistanceCache.
      */
-    private int[][] distanceToTop;
-    private int[][] distanceToBottom;
+    private BoardTables tables;
+    private static volatile DistanceCache cache =
+            new DistanceCache(Integer.getInteger("quoridor.distanceCacheEntries", DistanceCache.DEFAULT_CAPACITY));
 
     /*
-     * The following arrays encode which moves are legal across the board    
-     */
-    boolean[][] leftLegal;
-    boolean[][] rightLegal;
-    boolean[][] upLegal;
-    boolean[][] downLegal;
-
-    /* 
-     * The arrays distanceToTop, distanceTobottom, leftLegal, rightLegal, upLegal
-     * and downLegal need to be recomputed every time a wall is added. This is 
-     * computationally expensive. Moreover, in a naive implementation the same
-     * wall structures would be encountered over and over again. Therefore, we
-     * remember previously considered game states in a cache. 
+     * The tables replaced by each pushWall, so that popWall can restore
+     * them. Only allocated for states that are searched with apply/undo.
      */
-    private static GameState2P[] cache;
-    static {
-        cache = new GameState2P[65536];
-    }
+    private BoardTables[] tableHistory;
+    private int historySize;
 
     public GameState2P() {
-        assignedWalls = new WallStructure();
+        this(DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_WALLS_PER_PLAYER);
+    }
+
+    /*
+     * The initial state of a board of the given size, with the pawns in
+     * the middle of the bottom and top rows. The walls are kept in one long
+     * per orientation, so the board can have at most 64 wall centres,
+     * which the standard 9 by 9 board has.
+     */
+    public GameState2P(int width, int height, int wallsPerPlayer) {
+        if (width < 3 || height < 3 || (width - 1) * (height - 1) > Zobrist.MAX_SLOTS
+                || width * height > Zobrist.MAX_CELLS) {
+            throw new IllegalArgumentException("unsupported board size " + width + "x" + height);
+        }
+        if (wallsPerPlayer < 0 || wallsPerPlayer > Zobrist.MAX_WALLS_LEFT) {
+            throw new IllegalArgumentException("unsupported number of walls " + wallsPerPlayer);
+        }
+        this.width = width;
+        this.height = height;
+        this.wallsPerPlayer = wallsPerPlayer;
+        assignedWalls = new WallStructure(width, height);
         row = new int[2];
         col = new int[2];
         nrWallsLeft = new int[2];
@@ -63,12 +82,18 @@ public class GameState2P {
         col[1] = (width - 1) / 2;
         nrWallsLeft[0] = wallsPerPlayer;
         nrWallsLeft[1] = wallsPerPlayer;
+        for (int i = 0; i < row.length; i++) {
+            playerKey ^= Zobrist.pawn[i][row[i] * width + col[i]] ^ Zobrist.wallsLeft[i][nrWallsLeft[i]];
+        }
         initDistances();
     }
 
     // copy constructor
     public GameState2P(GameState2P state) {
-        assignedWalls = new WallStructure();
+        width = state.width;
+        height = state.height;
+        wallsPerPlayer = state.wallsPerPlayer;
+        assignedWalls = new WallStructure(state.assignedWalls);
         row = new int[2];
         col = new int[2];
         nrWallsLeft = new int[2];
@@ -77,15 +102,8 @@ public class GameState2P {
             col[i] = state.col[i];
             nrWallsLeft[i] = state.nrWallsLeft[i];
         }
-        for (Wall w : state.assignedWalls.getWalls()) {
-            assignedWalls.addWall(w);
-        }
-        distanceToTop = state.distanceToTop;
-        distanceToBottom = state.distanceToBottom;
-        leftLegal = state.leftLegal;
-        rightLegal = state.rightLegal;
-        upLegal = state.upLegal;
-        downLegal = state.downLegal;
+        playerKey = state.playerKey;
+        tables = state.tables;
     }
 
     public int getPlayerRow(int index) {
@@ -96,6 +114,25 @@ public class GameState2P {
         return col[index];
     }
 
+    public int getNrWallsLeft(int index) {
+        return nrWallsLeft[index];
+    }
+
+    // the length of the player's shortest path to its goal row
+    public int getDistanceToGoal(int index) {
+        if (tables == null) {
+            initDistances();
+        }
+        if (index == 0) {
+            return tables.distanceToTop[row[0] * width + col[0]];
+        }
+        return tables.distanceToBottom[row[1] * width + col[1]];
+    }
+
+    BoardTables getTables() {
+        return tables;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -104,24 +141,34 @@ public class GameState2P {
         return height;
     }
 
+    public int getWallsPerPlayer() {
+        return wallsPerPlayer;
+    }
+
+    /*
+     * The initial state of the board given by the system properties
+     * quoridor.width, quoridor.height and quoridor.wallsPerPlayer, the
+     * default board for those not set. Use 9, 9 and 10 for the standard
+     * game.
+     */
+    public static GameState2P fromProperties() {
+        return new GameState2P(Integer.getInteger("quoridor.width", DEFAULT_SIZE),
+                Integer.getInteger("quoridor.height", DEFAULT_SIZE),
+                Integer.getInteger("quoridor.wallsPerPlayer", DEFAULT_WALLS_PER_PLAYER));
+    }
+
     public boolean isGameOver() {
         return row[0] == height - 1 || row[1] == 0;
     }
 
     /*
-     * When a new wall is added, the values for the arrays distanceToBottom,
-     * distanceToTop, leftLegal, rightLegal, upLegal and downLegal need to
-     * be recomputed
+     * When a new wall is added, the legality masks and the distances to
+     * the top and bottom rows need to be recomputed
      */
     public void addWall(Wall w) {
+        BoardTables parent = tables;
         assignedWalls.addWall(w);
-        leftLegal = null;
-        rightLegal = null;
-        upLegal = null;
-        downLegal = null;
-        distanceToBottom = null;
-        distanceToTop = null;
-        initDistances();
+        initDistances(parent, w.isHorizontal(), assignedWalls.slot(w));
     }
 
     public WallStructure getWallStructure() {
@@ -129,69 +176,161 @@ public class GameState2P {
     }
 
     private boolean moveUpLegal(int r, int c) {
-        if (r == height - 1) {
-            //we are at the top row of the board
-            return false;
-        }
-        for (Wall wall : assignedWalls.getWalls()) {
-            if (wall.isHorizontal() && wall.getStartRow() == r + 1
-                    && (wall.getStartCol() == c || wall.getEndCol() == c)) {
-                // move prevented by wall
-                return false;
-            }
-        }
-        return true;
+        return tables.moveUpLegal(r, c);
     }
 
     private boolean moveDownLegal(int r, int c) {
-        if (r == 0) {
-            //we are at the bottom row of the board
-            return false;
-        }
-        for (Wall wall : assignedWalls.getWalls()) {
-            if (wall.isHorizontal() && wall.getStartRow() == r
-                    && (wall.getStartCol() == c || wall.getEndCol() == c)) {
-                // move prevented by wall
-                return false;
-            }
-        }
-        return true;
+        return tables.moveDownLegal(r, c);
     }
 
     private boolean moveRightLegal(int r, int c) {
-        if (c == width - 1) {
-            //we are at the rightmost column of the board
-            return false;
+        return tables.moveRightLegal(r, c);
+    }
+
+    private boolean moveLeftLegal(int r, int c) {
+        return tables.moveLeftLegal(r, c);
+    }
+
+    /*
+     * Make/unmake interface for the search. Unlike moveUp, placeWall etc.,
+     * which return a fresh state, these modify this state in place, so a
+     * player can walk the whole tree with a single working copy. The moves
+     * passed in are expected to be legal in this state, as returned by
+     * generateMoves, and must be undone in reverse order.
+     */
+    public void apply(Move m) {
+        m.apply(this);
+    }
+
+    public void undo(Move m) {
+        m.undo(this);
+    }
+
+    /*
+     * The same for a move code, see MoveCode, which spares the search from
+     * allocating a Move for every move it tries.
+     */
+    public void apply(int move, int playerIndex) {
+        switch (MoveCode.type(move)) {
+            case MoveCode.UP:
+                stepPlayer(playerIndex, 1, 0);
+                break;
+            case MoveCode.DOWN:
+                stepPlayer(playerIndex, -1, 0);
+                break;
+            case MoveCode.LEFT:
+                stepPlayer(playerIndex, 0, -1);
+                break;
+            case MoveCode.RIGHT:
+                stepPlayer(playerIndex, 0, 1);
+                break;
+            default:
+                pushWall(playerIndex, MoveCode.type(move) == MoveCode.HORIZONTAL_WALL, MoveCode.slot(move));
         }
-        for (Wall wall : assignedWalls.getWalls()) {
-            if (!wall.isHorizontal() && wall.getStartCol() == c + 1
-                    && (wall.getStartRow() == r || wall.getEndRow() == r)) {
-                // move prevented by wall
-                return false;
-            }
+    }
+
+    public void undo(int move, int playerIndex) {
+        switch (MoveCode.type(move)) {
+            case MoveCode.UP:
+                stepPlayer(playerIndex, -1, 0);
+                break;
+            case MoveCode.DOWN:
+                stepPlayer(playerIndex, 1, 0);
+                break;
+            case MoveCode.LEFT:
+                stepPlayer(playerIndex, 0, 1);
+                break;
+            case MoveCode.RIGHT:
+                stepPlayer(playerIndex, 0, -1);
+                break;
+            default:
+                popWall(playerIndex, MoveCode.type(move) == MoveCode.HORIZONTAL_WALL, MoveCode.slot(move));
         }
-        return true;
     }
 
-    private boolean moveLeftLegal(int r, int c) {
-        if (c == 0) {
-            //we are at the leftmost column of the board
-            return false;
+    public void stepPlayer(int playerIndex, int dRow, int dCol) {
+        playerKey ^= Zobrist.pawn[playerIndex][row[playerIndex] * width + col[playerIndex]];
+        row[playerIndex] += dRow;
+        col[playerIndex] += dCol;
+        playerKey ^= Zobrist.pawn[playerIndex][row[playerIndex] * width + col[playerIndex]];
+    }
+
+    public void pushWall(int playerIndex, Wall w) {
+        pushWall(playerIndex, w.isHorizontal(), assignedWalls.slot(w));
+    }
+
+    public void popWall(int playerIndex, Wall w) {
+        popWall(playerIndex, w.isHorizontal(), assignedWalls.slot(w));
+    }
+
+    public void pushWall(int playerIndex, boolean isHorizontal, int slot) {
+        if (tableHistory == null) {
+            tableHistory = new BoardTables[2 * wallsPerPlayer];
         }
-        for (Wall wall : assignedWalls.getWalls()) {
-            if (!wall.isHorizontal() && wall.getStartCol() == c
-                    && (wall.getStartRow() == r || wall.getEndRow() == r)) {
-                // move prevented by wall
-                return false;
-            }
+        tableHistory[historySize++] = tables;
+        changeWallsLeft(playerIndex, -1);
+        assignedWalls.addWall(isHorizontal, slot);
+        initDistances(tables, isHorizontal, slot);
+    }
+
+    public void popWall(int playerIndex, boolean isHorizontal, int slot) {
+        assignedWalls.removeWall(isHorizontal, slot);
+        changeWallsLeft(playerIndex, 1);
+        tables = tableHistory[--historySize];
+        tableHistory[historySize] = null;
+    }
+
+    private void changeWallsLeft(int playerIndex, int delta) {
+        playerKey ^= Zobrist.wallsLeft[playerIndex][nrWallsLeft[playerIndex]];
+        nrWallsLeft[playerIndex] += delta;
+        playerKey ^= Zobrist.wallsLeft[playerIndex][nrWallsLeft[playerIndex]];
+    }
+
+    /*
+     * 64-bit Zobrist key of the walls, pawn positions and wall counts. It
+     * is kept up to date by every move, so reading it costs nothing. The
+     * side to move is not part of the key.
+     */
+    public long key() {
+        return assignedWalls.key() ^ playerKey;
+    }
+
+    // the key of this state with the given player to move
+    public long key(int playerToMove) {
+        return playerToMove == 0 ? key() : key() ^ Zobrist.sideToMove;
+    }
+
+    /*
+     * The key the state would have, with the opponent to move, after the
+     * player makes the move. It is computed from the key differences of
+     * the move, without making it, which for a wall spares building the
+     * tables. The move must be legal here.
+     */
+    public long keyAfter(int move, int playerIndex) {
+        long k = key(1 - playerIndex);
+        int cell = row[playerIndex] * width + col[playerIndex];
+        long[] pawn = Zobrist.pawn[playerIndex];
+        switch (MoveCode.type(move)) {
+            case MoveCode.UP:
+                return k ^ pawn[cell] ^ pawn[cell + width];
+            case MoveCode.DOWN:
+                return k ^ pawn[cell] ^ pawn[cell - width];
+            case MoveCode.LEFT:
+                return k ^ pawn[cell] ^ pawn[cell - 1];
+            case MoveCode.RIGHT:
+                return k ^ pawn[cell] ^ pawn[cell + 1];
+            default:
+                long[] walls = MoveCode.type(move) == MoveCode.HORIZONTAL_WALL ? Zobrist.horizontalWall : Zobrist.verticalWall;
+                int left = nrWallsLeft[playerIndex];
+                return k ^ walls[MoveCode.slot(move)]
+                        ^ Zobrist.wallsLeft[playerIndex][left] ^ Zobrist.wallsLeft[playerIndex][left - 1];
         }
-        return true;
     }
 
     public GameState2P moveUp(int playerIndex) {
-        if (upLegal[row[playerIndex]][col[playerIndex]]) {
+        if (moveUpLegal(row[playerIndex], col[playerIndex])) {
             GameState2P newState = new GameState2P(this);
-            newState.row[playerIndex] = row[playerIndex] + 1;
+            newState.stepPlayer(playerIndex, 1, 0);
             return newState;
         }
         else {
@@ -200,9 +339,9 @@ public class GameState2P {
     }
 
     public GameState2P moveDown(int playerIndex) {
-        if (downLegal[row[playerIndex]][col[playerIndex]]) {
+        if (moveDownLegal(row[playerIndex], col[playerIndex])) {
             GameState2P newState = new GameState2P(this);
-            newState.row[playerIndex] = row[playerIndex] - 1;
+            newState.stepPlayer(playerIndex, -1, 0);
             return newState;
         }
         else {
@@ -212,9 +351,9 @@ public class GameState2P {
 
 
     public GameState2P moveRight(int playerIndex) {
-        if (rightLegal[row[playerIndex]][col[playerIndex]]) {
+        if (moveRightLegal(row[playerIndex], col[playerIndex])) {
             GameState2P newState = new GameState2P(this);
-            newState.col[playerIndex] = col[playerIndex] + 1;
+            newState.stepPlayer(playerIndex, 0, 1);
             return newState;
         }
         else {
@@ -223,9 +362,9 @@ public class GameState2P {
     }
 
     public GameState2P moveLeft(int playerIndex) {
-        if (leftLegal[row[playerIndex]][col[playerIndex]]) {
+        if (moveLeftLegal(row[playerIndex], col[playerIndex])) {
             GameState2P newState = new GameState2P(this);
-            newState.col[playerIndex] = col[playerIndex] - 1;
+            newState.stepPlayer(playerIndex, 0, -1);
             return newState;
         }
         else {
@@ -246,148 +385,169 @@ public class GameState2P {
 
         //Try adding wall
         GameState2P newState = new GameState2P(this);
-        newState.nrWallsLeft[playerIndex]--;
+        newState.changeWallsLeft(playerIndex, -1);
         newState.addWall(wall);
 
         //Check whether the new wall cuts off one of the players from their goal        
-        if (newState.distanceToTop[row[0]][col[0]] < 0 || newState.distanceToBottom[row[1]][col[1]] < 0) {
+        if (newState.tables.distanceToTop[row[0] * width + col[0]] < 0 || newState.tables.distanceToBottom[row[1] * width + col[1]] < 0) {
             return null;
         }
         return newState;
     }
 
     private void initDistances() {
-        int h = assignedWalls.hashCode() % cache.length;
-        if (cache[h] != null && cache[h].assignedWalls.equals(assignedWalls)) {
-            leftLegal = cache[h].leftLegal;
-            rightLegal = cache[h].rightLegal;
-            upLegal = cache[h].upLegal;
-            downLegal = cache[h].downLegal;
-            distanceToTop = cache[h].distanceToTop;
-            distanceToBottom = cache[h].distanceToBottom;
+        initDistances(null, false, 0);
+    }
+
+    /*
+     * Looks up the tables for the current walls. When they are not cached
+     * and the tables before the wall added in the given slot are known,
+     * they are derived from those instead of being built from scratch.
+     */
+    private void initDistances(BoardTables parent, boolean isHorizontal, int slot) {
+        DistanceCache c = cache;
+        BoardTables cached = c.get(assignedWalls);
+        if (cached != null) {
+            tables = cached;
         }
         else {
-            leftLegal = new boolean[height][width];
-            rightLegal = new boolean[height][width];
-            upLegal = new boolean[height][width];
-            downLegal = new boolean[height][width];
-            for (int i = 0; i < height; i++) {
-                for (int j = 0; j < width; j++) {
-                    leftLegal[i][j] = moveLeftLegal(i, j);
-                    rightLegal[i][j] = moveRightLegal(i, j);
-                    upLegal[i][j] = moveUpLegal(i, j);
-                    downLegal[i][j] = moveDownLegal(i, j);
-                }
-            }
-
-            List<FrontierNode> frontierTop = new ArrayList();
-            List<FrontierNode> frontierBot = new ArrayList();
-
-            distanceToTop = new int[height][width];
-            distanceToBottom = new int[height][width];
-
-            for (int j = 0; j < width; j++) {
-                frontierTop.add(new FrontierNode(height - 1, j, 0));
-                frontierBot.add(new FrontierNode(0, j, 0));
+            if (parent != null) {
+                tables = new BoardTables(parent, assignedWalls, isHorizontal, slot);
             }
-            for (int i = 0; i < height; i++) {
-                for (int j = 0; j < width; j++) {
-                    distanceToTop[i][j] = -1;
-                    distanceToBottom[i][j] = -1;
-                }
+            else {
+                tables = new BoardTables(assignedWalls);
             }
+            c.put(assignedWalls, tables);
+        }
+    }
 
-            // use breadth-first search to compute the values of distanceToTop
-            while (!frontierTop.isEmpty()) {
-                FrontierNode n = frontierTop.get(0);
-                frontierTop.remove(0);
-                if (distanceToTop[n.row][n.col] == -1 || distanceToTop[n.row][n.col] > n.dist) {
-                    distanceToTop[n.row][n.col] = n.dist;
-                    if (n.row > 0 && (distanceToTop[n.row - 1][n.col] == -1 || distanceToTop[n.row - 1][n.col] > n.dist + 1) && downLegal[n.row][n.col]) {
-                        frontierTop.add(new FrontierNode(n.row - 1, n.col, n.dist + 1));
-                    }
-                    if (n.row < height - 1 && (distanceToTop[n.row + 1][n.col] == -1 || distanceToTop[n.row + 1][n.col] > n.dist + 1) && upLegal[n.row][n.col]) {
-                        frontierTop.add(new FrontierNode(n.row + 1, n.col, n.dist + 1));
-                    }
-                    if (n.col > 0 && (distanceToTop[n.row][n.col - 1] == -1 || distanceToTop[n.row][n.col - 1] > n.dist + 1) && leftLegal[n.row][n.col]) {
-                        frontierTop.add(new FrontierNode(n.row, n.col - 1, n.dist + 1));
-                    }
-                    if (n.col < width - 1 && (distanceToTop[n.row][n.col + 1] == -1 || distanceToTop[n.row][n.col + 1] > n.dist + 1) && rightLegal[n.row][n.col]) {
-                        frontierTop.add(new FrontierNode(n.row, n.col + 1, n.dist + 1));
-                    }
-                }
-            }
+    public static DistanceCache getDistanceCache() {
+        return cache;
+    }
 
-            // use breadth-first search to compute the values of distanceToBottom
-            while (!frontierBot.isEmpty()) {
-                FrontierNode n = frontierBot.get(0);
-                frontierBot.remove(0);
-                if (distanceToBottom[n.row][n.col] == -1 || distanceToBottom[n.row][n.col] > n.dist) {
-                    distanceToBottom[n.row][n.col] = n.dist;
-                    if (n.row > 0 && (distanceToBottom[n.row - 1][n.col] == -1 || distanceToBottom[n.row - 1][n.col] > n.dist + 1) && downLegal[n.row][n.col]) {
-                        frontierBot.add(new FrontierNode(n.row - 1, n.col, n.dist + 1));
-                    }
-                    if (n.row < height - 1 && (distanceToBottom[n.row + 1][n.col] == -1 || distanceToBottom[n.row + 1][n.col] > n.dist + 1) && upLegal[n.row][n.col]) {
-                        frontierBot.add(new FrontierNode(n.row + 1, n.col, n.dist + 1));
-                    }
-                    if (n.col > 0 && (distanceToBottom[n.row][n.col - 1] == -1 || distanceToBottom[n.row][n.col - 1] > n.dist + 1) && leftLegal[n.row][n.col]) {
-                        frontierBot.add(new FrontierNode(n.row, n.col - 1, n.dist + 1));
-                    }
-                    if (n.col < width - 1 && (distanceToBottom[n.row][n.col + 1] == -1 || distanceToBottom[n.row][n.col + 1] > n.dist + 1) && rightLegal[n.row][n.col]) {
-                        frontierBot.add(new FrontierNode(n.row, n.col + 1, n.dist + 1));
-                    }
-                }
-            }
-            cache[h]=this;
-        }
+    public static void setDistanceCache(DistanceCache distanceCache) {
+        cache = distanceCache;
     }
 
 
     public static List<Move> getLegalMoves(GameState2P state, int index) {
-        List<Move> res = new ArrayList();
-        int r = state.row[index];
-        int c = state.col[index];
+        MoveList moves = new MoveList();
+        state.generateMoves(index, moves);
+        return moves.toMoves(index, state.width);
+    }
+
+    /*
+     * Appends the codes of all legal moves of the player to moves: first
+     * the pawn moves, then the horizontal and the vertical walls.
+     */
+    public void generateMoves(int index, MoveList moves) {
+        int r = row[index];
+        int c = col[index];
 
         //Check in which directions the player can move
-        if (state.moveDownLegal(r, c)) {
-            res.add(new PlayerDownMove(index));
+        if (moveDownLegal(r, c)) {
+            moves.add(MoveCode.DOWN);
         }
-        if (state.moveUpLegal(r, c)) {
-            res.add(new PlayerUpMove(index));
+        if (moveUpLegal(r, c)) {
+            moves.add(MoveCode.UP);
         }
-        if (state.moveLeftLegal(r, c)) {
-            res.add(new PlayerLeftMove(index));
+        if (moveLeftLegal(r, c)) {
+            moves.add(MoveCode.LEFT);
         }
-        if (state.moveRightLegal(r, c)) {
-            res.add(new PlayerRightMove(index));
+        if (moveRightLegal(r, c)) {
+            moves.add(MoveCode.RIGHT);
         }
 
         //Check at which positions a wall can be added
-        for (int i = 1; i < state.height - 1; i++) {
-            for (int j = 0; j < state.width-1; j++) {
-                Wall w = new Wall(i, j, true);
-                GameState2P newState = state.placeWall(index, w);
-                if (newState != null) {
-                    res.add(new WallMove(index, w));
+        if (nrWallsLeft[index] == 0) {
+            return;
+        }
+        int words = tables.upLegal.length;
+        long[][] crossRows = new long[2][words];
+        long[][] crossCols = new long[2][words];
+        markShortestPaths(crossRows, crossCols);
+        for (int i = 1; i < height - 1; i++) {
+            for (int j = 0; j < width - 1; j++) {
+                int slot = (i - 1) * (width - 1) + j;
+                if (!assignedWalls.intersects(true, slot) && keepsPaths(true, slot, crossRows, crossCols)) {
+                    moves.add(MoveCode.wall(true, slot));
                 }
             }
         }
-        for (int i = 0; i < state.height-1; i++) {
-            for (int j = 1; j < state.width - 1; j++) {
-                Wall w = new Wall(i, j, false);
-                GameState2P newState = state.placeWall(index, w);
-                if (newState != null) {
-                    res.add(new WallMove(index, w));
+        for (int i = 0; i < height - 1; i++) {
+            for (int j = 1; j < width - 1; j++) {
+                int slot = i * (width - 1) + j - 1;
+                if (!assignedWalls.intersects(false, slot) && keepsPaths(false, slot, crossRows, crossCols)) {
+                    moves.add(MoveCode.wall(false, slot));
                 }
             }
         }
-        return res;
     }
 
     /*
-     * Heuristic evaluation of the state, used by the minimax algorithm
+     * Marks one shortest path to the goal row for each player, in the
+     * format of BoardTables.markShortestPath.
      */
+    void markShortestPaths(long[][] crossRows, long[][] crossCols) {
+        tables.markShortestPath(row[0] * width + col[0], tables.distanceToTop, crossRows[0], crossCols[0]);
+        tables.markShortestPath(row[1] * width + col[1], tables.distanceToBottom, crossRows[1], crossCols[1]);
+    }
+
+    /*
+     * Whether both players can still reach their goal row after adding a
+     * wall in the given slot, which must fit on the board. A wall can only
+     * cut a player off if it blocks the shortest path marked for that
+     * player in crossRows and crossCols, so the reachability probe only
+     * runs for those walls, and not even then when the wall cannot close
+     * off any cells (see WallStructure.canSeparate), as is mostly the case
+     * on a large board. This decides the same as placeWall without
+     * building the new state.
+     */
+    boolean keepsPaths(boolean isHorizontal, int slot, long[][] crossRows, long[][] crossCols) {
+        if (!assignedWalls.canSeparate(isHorizontal, slot)) {
+            return true;
+        }
+        int cell = (slot / (width - 1)) * width + slot % (width - 1);
+        int a1;
+        int b1;
+        int a2;
+        int b2;
+        long[][] crossed;
+        if (isHorizontal) {
+            a1 = cell;
+            b1 = cell + width;
+            a2 = cell + 1;
+            b2 = cell + 1 + width;
+            crossed = crossRows;
+        }
+        else {
+            a1 = cell;
+            b1 = cell + 1;
+            a2 = cell + width;
+            b2 = cell + width + 1;
+            crossed = crossCols;
+        }
+        for (int i = 0; i < 2; i++) {
+            if (BoardTables.isSet(crossed[i], a1) || BoardTables.isSet(crossed[i], a2)) {
+                int goalRow = i == 0 ? height - 1 : 0;
+                if (!tables.reachesGoal(row[i] * width + col[i], goalRow, a1, b1, a2, b2)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public double evaluateState(int index) {
+        return evaluate(index);
+    }
+
+    /*
+     * Heuristic evaluation of the state, used by the minimax algorithm.
+     * It is the same for both players up to the sign, so it can be used
+     * by a negamax search.
+     */
+    public int evaluate(int index) {
         int distToGoal;
         int opponentDistToGoal;
         int nrWalls;
@@ -403,11 +563,11 @@ public class GameState2P {
             {
                 losing=true;
             }
-            if (distanceToTop == null) {
+            if (tables == null) {
                 initDistances();
             }
-            distToGoal = distanceToTop[row[0]][col[0]];
-            opponentDistToGoal = distanceToBottom[row[1]][col[1]];
+            distToGoal = tables.distanceToTop[row[0] * width + col[0]];
+            opponentDistToGoal = tables.distanceToBottom[row[1] * width + col[1]];
             nrWalls = nrWallsLeft[0];
             opponentNrWalls = nrWallsLeft[1];
         }
@@ -420,11 +580,11 @@ public class GameState2P {
             {
                 winning=true;
             }
-            if (distanceToTop == null) {
+            if (tables == null) {
                 initDistances();
             }
-            opponentDistToGoal = distanceToTop[row[0]][col[0]];
-            distToGoal = distanceToBottom[row[1]][col[1]];
+            opponentDistToGoal = tables.distanceToTop[row[0] * width + col[0]];
+            distToGoal = tables.distanceToBottom[row[1] * width + col[1]];
             opponentNrWalls = nrWallsLeft[0];
             nrWalls = nrWallsLeft[1];
         }
@@ -450,30 +610,7 @@ public class GameState2P {
     }
 
     public int hashCode(){
-        int res = assignedWalls.hashCode();
-        for(int i=0;i<row.length;i++){
-            res += (i+1)*16*row[i];
-            res += (i+1)*1024*col[i];
-            res += (i+1)*32768*nrWallsLeft[i];
-        }
-        return res;
-    }
-
-
-    /*
-     * Inner class which is used to implement breadth-first search
-     * in the method initDistances
-     */
-    public static class FrontierNode {
-
-        int row;
-        int col;
-        int dist;
-
-        public FrontierNode(int row, int col, int dist) {
-            this.row = row;
-            this.col = col;
-            this.dist = dist;
-        }
+        long key = key();
+        return (int) (key ^ key >>> 32);
     }
-}
\ No newline at end of file
+}
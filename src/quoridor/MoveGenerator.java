@@ -0,0 +1,406 @@
+package quoridor;
+
+import java.util.Arrays;
+import moves.MoveCode;
+import moves.MoveList;
+
+/**
+ * Generates the legal moves of a player in stages, so that a search which
+ * cuts off after the first few moves never pays for the rest:
+ *
+ * 1. the move from the transposition table, if it is legal here;
+ * 2. pawn moves, those that bring the player closer to the goal first;
+ * 3. the killer walls, which caused a cutoff in another node of the ply;
+ * 4. walls that block the opponent's shortest path;
+ * 5. all other walls.
+ *
+ * Given a history table, the walls of stages 4 and 5 come in order of
+ * their history score, ties in generation order. The walls of a stage are
+ * gathered when it starts, but the expensive check that a wall leaves both
+ * players a path is still only done as each wall is returned.
+ *
+ * Each stage is only set up when the previous one runs out. Walls are
+ * checked for legality as they are returned. The state may be modified
+ * between calls to next, as long as it is back in its original position
+ * whenever next is called, which is how apply/undo searches use it.
+ *
+ * Moves are returned as codes, see MoveCode. A generator can be reset for
+ * another node, so a search needs only one per ply and generating moves
+ * does not allocate.
+ *
+ * @author steven
+ */
+public class MoveGenerator {
+
+    private static final int TT_MOVE = 0;
+    private static final int PAWN_MOVES = 1;
+    private static final int KILLERS = 2;
+    private static final int PATH_WALLS = 3;
+    private static final int OTHER_WALLS = 4;
+    private static final int DONE = 5;
+
+    /*
+     * The walls of a stage ordered by history are picked one at a time,
+     * as a cutoff usually comes early; after this many, the rest are
+     * sorted at once, which on a large board is much cheaper.
+     */
+    private static final int LAZY_PICKS = 4;
+
+    private GameState2P state;
+    private int index;
+    private int ttMove;
+    private int killer1;
+    private int killer2;
+    private int[] history;
+    private int width;
+    private int height;
+
+    private int stage;
+    private int cursor;
+
+    private final int[] pawnMoves = new int[4];
+    private final int[] target = new int[4];
+    private int nrPawnMoves;
+
+    // shortest paths of both players, marked when the first wall is needed
+    private long[][] crossRows;
+    private long[][] crossCols;
+    private boolean marked;
+
+    // the walls of the current stage, when they are ordered by history
+    private int[] candidates = new int[0];
+    private int nrCandidates = -1;
+    private long[] sortKeys = new long[0];
+
+    public MoveGenerator() {
+    }
+
+    public MoveGenerator(GameState2P state, int index, int ttMove) {
+        reset(state, index, ttMove);
+    }
+
+    /*
+     * Starts generating the moves of the player in the given state, with
+     * ttMove first if it is legal there.
+     */
+    public void reset(GameState2P state, int index, int ttMove) {
+        reset(state, index, ttMove, MoveCode.NONE, MoveCode.NONE, null);
+    }
+
+    /*
+     * The same with two killer walls, tried after the pawn moves if they
+     * are legal here, and a history table indexed by move code, or null to leave the
+     * walls in generation order.
+     */
+    public void reset(GameState2P state, int index, int ttMove, int killer1, int killer2, int[] history) {
+        this.state = state;
+        this.index = index;
+        this.ttMove = ttMove;
+        this.killer1 = killer1;
+        this.killer2 = killer2;
+        this.history = history;
+        nrCandidates = -1;
+        width = state.getWidth();
+        height = state.getHeight();
+        stage = TT_MOVE;
+        cursor = 0;
+        nrPawnMoves = -1;
+        marked = false;
+    }
+
+    /*
+     * Returns the next legal move, or MoveCode.NONE when there are none
+     * left.
+     */
+    public int next() {
+        while (true) {
+            switch (stage) {
+                case TT_MOVE:
+                    stage = PAWN_MOVES;
+                    if (ttMove != MoveCode.NONE && isLegal(ttMove)) {
+                        return ttMove;
+                    }
+                    break;
+                case PAWN_MOVES:
+                    if (nrPawnMoves < 0) {
+                        generatePawnMoves();
+                    }
+                    if (cursor < nrPawnMoves) {
+                        return pawnMoves[cursor++];
+                    }
+                    cursor = 0;
+                    stage = state.getNrWallsLeft(index) > 0 ? KILLERS : DONE;
+                    break;
+                case KILLERS:
+                    int killer = cursor == 0 ? killer1 : killer2;
+                    if (++cursor == 2) {
+                        cursor = 0;
+                        stage = PATH_WALLS;
+                    }
+                    if (MoveCode.isWall(killer) && killer != ttMove && isLegal(killer)) {
+                        return killer;
+                    }
+                    break;
+                case PATH_WALLS:
+                case OTHER_WALLS:
+                    if (!marked) {
+                        markPaths();
+                    }
+                    int m = history == null ? nextWall(stage == PATH_WALLS) : nextWallByHistory(stage == PATH_WALLS);
+                    if (m != MoveCode.NONE) {
+                        return m;
+                    }
+                    cursor = 0;
+                    nrCandidates = -1;
+                    stage++;
+                    break;
+                default:
+                    return MoveCode.NONE;
+            }
+        }
+    }
+
+    /*
+     * Appends all moves that have not been returned yet to moves.
+     */
+    public void remaining(MoveList moves) {
+        for (int m = next(); m != MoveCode.NONE; m = next()) {
+            moves.add(m);
+        }
+    }
+
+    private void generatePawnMoves() {
+        BoardTables tables = state.getTables();
+        int r = state.getPlayerRow(index);
+        int c = state.getPlayerCol(index);
+        int[] distance = index == 0 ? tables.distanceToTop : tables.distanceToBottom;
+        nrPawnMoves = 0;
+        if (tables.moveDownLegal(r, c)) {
+            target[nrPawnMoves] = (r - 1) * width + c;
+            pawnMoves[nrPawnMoves++] = MoveCode.DOWN;
+        }
+        if (tables.moveUpLegal(r, c)) {
+            target[nrPawnMoves] = (r + 1) * width + c;
+            pawnMoves[nrPawnMoves++] = MoveCode.UP;
+        }
+        if (tables.moveLeftLegal(r, c)) {
+            target[nrPawnMoves] = r * width + c - 1;
+            pawnMoves[nrPawnMoves++] = MoveCode.LEFT;
+        }
+        if (tables.moveRightLegal(r, c)) {
+            target[nrPawnMoves] = r * width + c + 1;
+            pawnMoves[nrPawnMoves++] = MoveCode.RIGHT;
+        }
+        // insertion sort on the distance left to the goal row
+        for (int i = 1; i < nrPawnMoves; i++) {
+            for (int j = i; j > 0 && distance[target[j]] < distance[target[j - 1]]; j--) {
+                int t = target[j];
+                target[j] = target[j - 1];
+                target[j - 1] = t;
+                int m = pawnMoves[j];
+                pawnMoves[j] = pawnMoves[j - 1];
+                pawnMoves[j - 1] = m;
+            }
+        }
+        // the table move has been tried already
+        for (int i = 0; i < nrPawnMoves; i++) {
+            if (pawnMoves[i] == ttMove) {
+                System.arraycopy(pawnMoves, i + 1, pawnMoves, i, nrPawnMoves - i - 1);
+                nrPawnMoves--;
+                break;
+            }
+        }
+    }
+
+    /*
+     * Whether the move is a quiet wall: one that does not cross the
+     * opponent's shortest path. Such a wall leaves the opponent's distance
+     * to the goal as it is and can only lengthen the player's own, so it
+     * never raises the evaluation for the player. Like next, it must be
+     * called with the state in its original position.
+     */
+    public boolean isQuiet(int move) {
+        if (!MoveCode.isWall(move)) {
+            return false;
+        }
+        if (!marked) {
+            markPaths();
+        }
+        return !blocksPath(MoveCode.type(move) == MoveCode.HORIZONTAL_WALL, MoveCode.slot(move), 1 - index);
+    }
+
+    /*
+     * Whether the wall came from an earlier stage. A legal wall equal to
+     * the table move or a killer was returned there.
+     */
+    private boolean isTried(int code) {
+        return code == ttMove || code == killer1 || code == killer2;
+    }
+
+    private void markPaths() {
+        int words = state.getTables().upLegal.length;
+        if (crossRows == null || crossRows[0].length != words) {
+            crossRows = new long[2][words];
+            crossCols = new long[2][words];
+        }
+        else {
+            for (int i = 0; i < 2; i++) {
+                Arrays.fill(crossRows[i], 0);
+                Arrays.fill(crossCols[i], 0);
+            }
+        }
+        state.markShortestPaths(crossRows, crossCols);
+        marked = true;
+    }
+
+    /*
+     * Scans the wall slots from the cursor, in the same order as
+     * GameState2P.generateMoves, for the next legal wall which blocks the
+     * opponent's shortest path (or which does not, for the last stage).
+     */
+    private int nextWall(boolean onPath) {
+        int nrHorizontal = (height - 2) * (width - 1);
+        int nrVertical = (height - 1) * (width - 2);
+        WallStructure walls = state.getWallStructure();
+        while (cursor < nrHorizontal + nrVertical) {
+            int k = cursor++;
+            boolean isHorizontal = k < nrHorizontal;
+            int slot;
+            if (isHorizontal) {
+                slot = k;
+            }
+            else {
+                k -= nrHorizontal;
+                slot = (k / (width - 2)) * (width - 1) + k % (width - 2);
+            }
+            int code = MoveCode.wall(isHorizontal, slot);
+            if (blocksPath(isHorizontal, slot, 1 - index) == onPath && !isTried(code)
+                    && !walls.intersects(isHorizontal, slot) && state.keepsPaths(isHorizontal, slot, crossRows, crossCols)) {
+                return code;
+            }
+        }
+        return MoveCode.NONE;
+    }
+
+    /*
+     * Like nextWall, but returns the walls of the stage in order of their
+     * history score. The walls that fit on the board are gathered first;
+     * the first few times the one with the best score is picked, then the
+     * rest are sorted, and each is checked as it is returned.
+     */
+    private int nextWallByHistory(boolean onPath) {
+        if (nrCandidates < 0) {
+            int nrHorizontal = (height - 2) * (width - 1);
+            int nrVertical = (height - 1) * (width - 2);
+            if (candidates.length < nrHorizontal + nrVertical) {
+                candidates = new int[nrHorizontal + nrVertical];
+            }
+            nrCandidates = 0;
+            WallStructure walls = state.getWallStructure();
+            for (int k = 0; k < nrHorizontal + nrVertical; k++) {
+                boolean isHorizontal = k < nrHorizontal;
+                int slot = isHorizontal ? k : ((k - nrHorizontal) / (width - 2)) * (width - 1) + (k - nrHorizontal) % (width - 2);
+                int code = MoveCode.wall(isHorizontal, slot);
+                if (blocksPath(isHorizontal, slot, 1 - index) == onPath && !isTried(code)
+                        && !walls.intersects(isHorizontal, slot)) {
+                    candidates[nrCandidates++] = code;
+                }
+            }
+        }
+        while (cursor < nrCandidates) {
+            if (cursor < LAZY_PICKS) {
+                int best = cursor;
+                for (int i = cursor + 1; i < nrCandidates; i++) {
+                    if (history[candidates[i]] > history[candidates[best]]) {
+                        best = i;
+                    }
+                }
+                // move it to the front, keeping the rest in generation order
+                int code = candidates[best];
+                System.arraycopy(candidates, cursor, candidates, cursor + 1, best - cursor);
+                candidates[cursor] = code;
+            }
+            else if (cursor == LAZY_PICKS) {
+                sortByHistory(cursor);
+            }
+            int code = candidates[cursor++];
+            if (state.keepsPaths(MoveCode.type(code) == MoveCode.HORIZONTAL_WALL, MoveCode.slot(code), crossRows, crossCols)) {
+                return code;
+            }
+        }
+        return MoveCode.NONE;
+    }
+
+    // sorts the candidates from the given one on by history score, ties in generation order
+    private void sortByHistory(int from) {
+        int n = nrCandidates - from;
+        if (sortKeys.length < n) {
+            sortKeys = new long[candidates.length];
+        }
+        for (int i = 0; i < n; i++) {
+            int code = candidates[from + i];
+            sortKeys[i] = (long) -history[code] << 32 | (long) i << 16 | code;
+        }
+        Arrays.sort(sortKeys, 0, n);
+        for (int i = 0; i < n; i++) {
+            candidates[from + i] = (int) (sortKeys[i] & 0xFFFF);
+        }
+    }
+
+    private boolean blocksPath(boolean isHorizontal, int slot, int player) {
+        int cell = (slot / (width - 1)) * width + slot % (width - 1);
+        if (isHorizontal) {
+            return BoardTables.isSet(crossRows[player], cell) || BoardTables.isSet(crossRows[player], cell + 1);
+        }
+        else {
+            return BoardTables.isSet(crossCols[player], cell) || BoardTables.isSet(crossCols[player], cell + width);
+        }
+    }
+
+    /*
+     * Whether the move from the transposition table is legal here. It is
+     * checked rather than trusted, as two positions can share a key.
+     */
+    private boolean isLegal(int code) {
+        BoardTables tables = state.getTables();
+        int r = state.getPlayerRow(index);
+        int c = state.getPlayerCol(index);
+        if (!MoveCode.isWall(code) && MoveCode.slot(code) != 0) {
+            return false;
+        }
+        switch (MoveCode.type(code)) {
+            case MoveCode.UP:
+                return tables.moveUpLegal(r, c);
+            case MoveCode.DOWN:
+                return tables.moveDownLegal(r, c);
+            case MoveCode.LEFT:
+                return tables.moveLeftLegal(r, c);
+            case MoveCode.RIGHT:
+                return tables.moveRightLegal(r, c);
+            case MoveCode.HORIZONTAL_WALL:
+            case MoveCode.VERTICAL_WALL:
+                if (state.getNrWallsLeft(index) == 0) {
+                    return false;
+                }
+                boolean isHorizontal = MoveCode.type(code) == MoveCode.HORIZONTAL_WALL;
+                int slot = MoveCode.slot(code);
+                if (!isOnBoard(isHorizontal, slot) || state.getWallStructure().intersects(isHorizontal, slot)) {
+                    return false;
+                }
+                markPaths();
+                return state.keepsPaths(isHorizontal, slot, crossRows, crossCols);
+            default:
+                return false;
+        }
+    }
+
+    // only the slots generateMoves generates
+    private boolean isOnBoard(boolean isHorizontal, int slot) {
+        if (isHorizontal) {
+            return slot < (height - 2) * (width - 1);
+        }
+        else {
+            return slot < (height - 1) * (width - 1) && slot % (width - 1) < width - 2;
+        }
+    }
+}
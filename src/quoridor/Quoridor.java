@@ -13,7 +13,7 @@ public class Quoridor {
     GameDisplay display;
 
     public Quoridor() {
-        state = new GameState2P();
+        state = GameState2P.fromProperties();
         display = new GameDisplay(state);
         players = new QuoridorPlayer[2];
         players[0] = new TranspositionPlayer(state, 0, this);
@@ -24,6 +24,14 @@ public class Quoridor {
         players[0].chooseMove();
     }
 
+    /*
+     * A game without a display or players, for subclasses that run games
+     * headless, such as tournament.Match. They must override doMove.
+     */
+    protected Quoridor(GameState2P state) {
+        this.state = state;
+    }
+
     public void doMove(int playerIndex, GameState2P newState) {
         state = newState;
         for (int i = 0; i < 2; i++) {
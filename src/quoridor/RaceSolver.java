@@ -0,0 +1,72 @@
+package quoridor;
+
+import moves.MoveCode;
+
+/**
+ * Solves the positions in which neither player has a wall left. Pawns do
+ * not block each other, so such a position is a pure race: both players
+ * walk their shortest paths, and the player to move wins when its distance
+ * to the goal is no longer than the opponent's.
+ *
+ * The score is the one GameState2P.evaluate gives the last position of
+ * that race, so it is the score a search deep enough to play the race out
+ * would find, and a search can use it at any node in place of the subtree.
+ *
+ * @author steven
+ */
+public final class RaceSolver {
+
+    private RaceSolver() {
+    }
+
+    public static boolean isRace(GameState2P state) {
+        return state.getNrWallsLeft(0) == 0 && state.getNrWallsLeft(1) == 0;
+    }
+
+    // the player who wins the race, index being the player to move
+    public static int winner(GameState2P state, int index) {
+        return state.getDistanceToGoal(index) <= state.getDistanceToGoal(1 - index) ? index : 1 - index;
+    }
+
+    // the score of the race for the player to move
+    public static int score(GameState2P state, int index) {
+        int own = state.getDistanceToGoal(index);
+        int opponent = state.getDistanceToGoal(1 - index);
+        if (own <= opponent) {
+            // we arrive after the opponent's own - 1 steps
+            return 1000 + opponent - (own - 1);
+        }
+        // the opponent arrives after our opponent steps
+        return -1000 - (own - opponent);
+    }
+
+    // the number of plies until the race is over
+    public static int length(GameState2P state, int index) {
+        int own = state.getDistanceToGoal(index);
+        int opponent = state.getDistanceToGoal(1 - index);
+        return own <= opponent ? 2 * own - 1 : 2 * opponent;
+    }
+
+    // a step along the shortest path of the player to move, as a MoveCode
+    public static int bestMove(GameState2P state, int index) {
+        int d = state.getDistanceToGoal(index);
+        BoardTables tables = state.getTables();
+        int[] distance = index == 0 ? tables.distanceToTop : tables.distanceToBottom;
+        int width = state.getWidth();
+        int r = state.getPlayerRow(index);
+        int c = state.getPlayerCol(index);
+        if (tables.moveUpLegal(r, c) && distance[(r + 1) * width + c] < d) {
+            return MoveCode.UP;
+        }
+        if (tables.moveDownLegal(r, c) && distance[(r - 1) * width + c] < d) {
+            return MoveCode.DOWN;
+        }
+        if (tables.moveLeftLegal(r, c) && distance[r * width + c - 1] < d) {
+            return MoveCode.LEFT;
+        }
+        if (tables.moveRightLegal(r, c) && distance[r * width + c + 1] < d) {
+            return MoveCode.RIGHT;
+        }
+        return MoveCode.NONE;
+    }
+}
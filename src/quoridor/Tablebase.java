@@ -0,0 +1,223 @@
+package quoridor;
+
+import moves.MoveCode;
+import moves.MoveList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads an endgame tablebase built by TablebaseGenerator. For every
+ * position with at most a few walls left in total it holds the result
+ * under perfect play, as the number of plies until the game ends: odd
+ * when the player to move wins, even when it loses. Positions without any
+ * walls left are races, which RaceSolver solves; they are not stored.
+ *
+ * The file is memory-mapped, so opening it costs nothing and the
+ * operating system pages in the parts the search probes. Any number of
+ * threads can probe it at once.
+ *
+ * File layout, all numbers big-endian: the magic number, board width,
+ * board height, walls per player and the largest number of walls left;
+ * then, for 1 up to that number of walls left, the number of wall
+ * structures and their sorted keys (see key); then the values of each of
+ * those groups in turn. A group holds for every structure, every way to
+ * split the walls left between the players (player 0's count ascending),
+ * each side to move, each cell of pawn 0 and each cell of pawn 1, one
+ * byte: 0 for a position that cannot occur, 255 for a draw, and otherwise
+ * the number of plies plus one.
+ *
+ * @author steven
+ */
+public class Tablebase {
+
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    static final int MAGIC = 0x51544231;
+    static final int INVALID = 0;
+    static final int DRAW = 255;
+
+    // more plies than any stored result
+    private static final int MAX_RANK = 256;
+
+    private static Tablebase defaultTablebase;
+    private static boolean defaultLoaded;
+
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final int wallsPerPlayer;
+    private final int maxWallsLeft;
+    private final int cells;
+    private final long[][] keys;
+    private final long[] offsets;
+
+    Tablebase(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("not a tablebase");
+        }
+        width = data.getInt(4);
+        height = data.getInt(8);
+        wallsPerPlayer = data.getInt(12);
+        maxWallsLeft = data.getInt(16);
+        cells = width * height;
+        keys = new long[maxWallsLeft + 1][];
+        offsets = new long[maxWallsLeft + 1];
+        int pos = 20;
+        for (int k = 1; k <= maxWallsLeft; k++) {
+            keys[k] = new long[data.getInt(pos)];
+            pos += 4;
+            for (int i = 0; i < keys[k].length; i++) {
+                keys[k][i] = data.getLong(pos);
+                pos += 8;
+            }
+        }
+        long offset = pos;
+        for (int k = 1; k <= maxWallsLeft; k++) {
+            offsets[k] = offset;
+            offset += (long) keys[k].length * splits(k, wallsPerPlayer) * 2 * cells * cells;
+        }
+        if (offset != data.capacity()) {
+            throw new IOException("tablebase truncated");
+        }
+    }
+
+    public static Tablebase open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the file is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Tablebase(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /*
+     * The tablebase named by the system property quoridor.tablebase, or
+     * null if there is none.
+     */
+    public static synchronized Tablebase getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            String file = System.getProperty("quoridor.tablebase");
+            if (file != null) {
+                try {
+                    defaultTablebase = open(new File(file));
+                } catch (IOException e) {
+                    System.err.println("Cannot read tablebase " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return defaultTablebase;
+    }
+
+    public int getMaxWallsLeft() {
+        return maxWallsLeft;
+    }
+
+    // whether the state's result is stored
+    public boolean covers(GameState2P state) {
+        int k = state.getNrWallsLeft(0) + state.getNrWallsLeft(1);
+        return k > 0 && k <= maxWallsLeft && state.getWidth() == width && state.getHeight() == height
+                && state.getNrWallsLeft(0) <= wallsPerPlayer && state.getNrWallsLeft(1) <= wallsPerPlayer;
+    }
+
+    /*
+     * The number of plies until the game ends under perfect play, odd when
+     * the player to move wins, or -1 when the state is not covered or a
+     * draw.
+     */
+    public int plies(GameState2P state, int index) {
+        if (!covers(state)) {
+            return -1;
+        }
+        int v = value(state, index);
+        return v == INVALID || v == DRAW ? -1 : v - 1;
+    }
+
+    /*
+     * A score for the player to move, on the scale of GameState2P.evaluate,
+     * or UNKNOWN when the state is not covered or a draw. The game's last
+     * position is not known, so this is the bound its evaluation is sure
+     * to reach: at least 1001 for a win, at most -1001 for a loss. A
+     * search thus never prefers a win from the tablebase over one it has
+     * played out.
+     */
+    public int score(GameState2P state, int index) {
+        int plies = plies(state, index);
+        if (plies < 0) {
+            return UNKNOWN;
+        }
+        return (plies & 1) != 0 ? 1001 : -1001;
+    }
+
+    /*
+     * The move that wins the quickest, or if there is none draws, or else
+     * loses the slowest, as a MoveCode; NONE when the state is not covered
+     * or a draw.
+     */
+    public int bestMove(GameState2P state, int index) {
+        if (plies(state, index) < 0) {
+            return MoveCode.NONE;
+        }
+        MoveList moves = new MoveList();
+        state.generateMoves(index, moves);
+        int best = MoveCode.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        GameState2P child = new GameState2P(state);
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            child.apply(m, index);
+            int plies;
+            if (child.isGameOver()) {
+                plies = 0;
+            }
+            else if (RaceSolver.isRace(child)) {
+                plies = RaceSolver.length(child, 1 - index);
+            }
+            else {
+                // a covered state without a result is a draw
+                plies = plies(child, 1 - index);
+            }
+            child.undo(m, index);
+            // the opponent to move loses after an even number of plies
+            int rank = plies < 0 ? 0 : (plies & 1) == 0 ? MAX_RANK - plies : plies - MAX_RANK;
+            if (rank > bestRank) {
+                best = m;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private int value(GameState2P state, int index) {
+        int k = state.getNrWallsLeft(0) + state.getNrWallsLeft(1);
+        int s = Arrays.binarySearch(keys[k], key(state.getWallStructure()));
+        if (s < 0) {
+            return INVALID;
+        }
+        int split = state.getNrWallsLeft(0) - Math.max(0, k - wallsPerPlayer);
+        int p0 = state.getPlayerRow(0) * width + state.getPlayerCol(0);
+        int p1 = state.getPlayerRow(1) * width + state.getPlayerCol(1);
+        long pos = offsets[k] + ((((long) s * splits(k, wallsPerPlayer) + split) * 2 + index) * cells + p0) * cells + p1;
+        return data.get((int) pos) & 0xFF;
+    }
+
+    // the walls as one number: the horizontal slots, and the vertical ones above them
+    static long key(WallStructure walls) {
+        return walls.horizontal | walls.vertical << 32;
+    }
+
+    // the ways to split k walls left between two players with at most wallsPerPlayer each
+    static int splits(int k, int wallsPerPlayer) {
+        return Math.min(k, wallsPerPlayer) - Math.max(0, k - wallsPerPlayer) + 1;
+    }
+}
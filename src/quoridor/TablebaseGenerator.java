@@ -0,0 +1,360 @@
+package quoridor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the endgame tablebase read by Tablebase: every position of the
+ * board (see GameState2P.fromProperties) with at most a given number of
+ * walls left in total, solved by retrograde analysis. Boards larger than
+ * 5 by 5 have too many positions.
+ *
+ * The walls placed plus the walls left always add up to twice the walls
+ * per player, so the positions with k walls left are the wall structures
+ * of that many walls, each way to split k between the players, and every
+ * placement of the pawns and side to move. They are solved for k = 0, 1,
+ * ... in turn; k = 0 is a race, see RaceSolver. A wall leads from k to
+ * k - 1, which is solved already, while pawn moves stay within one
+ * structure and split. So each structure is a small separate problem,
+ * solved by one thread, and the threads share out the structures.
+ *
+ * Within a structure, a position is a win in n plies when some move leads
+ * to a loss in n - 1, and a loss in n when every move leads to a win in
+ * at most n - 1. Positions are settled for n = 1, 2, ... until a round
+ * settles nothing more; those left over are draws.
+ *
+ * Usage: java quoridor.TablebaseGenerator file [maxWallsLeft [threads]]
+ *
+ * @author steven
+ */
+public class TablebaseGenerator {
+
+    public static final int DEFAULT_MAX_WALLS_LEFT = 2;
+
+    // the most plies a value byte can hold
+    private static final int MAX_PLIES = 253;
+
+    private final int width;
+    private final int height;
+    private final int wallsPerPlayer;
+    private final int maxWallsLeft;
+    private final int cells;
+
+    // every wall that fits on the board, in the order of the move generator
+    private final boolean[] wallHorizontal;
+    private final int[] wallSlot;
+
+    // by number of walls left: the sorted keys of the structures, and their values
+    private final long[][] keys;
+    private final byte[][] values;
+
+    private final AtomicInteger draws = new AtomicInteger();
+
+    public TablebaseGenerator(int maxWallsLeft) {
+        GameState2P start = GameState2P.fromProperties();
+        width = start.getWidth();
+        height = start.getHeight();
+        wallsPerPlayer = start.getWallsPerPlayer();
+        this.maxWallsLeft = Math.min(maxWallsLeft, 2 * wallsPerPlayer);
+        cells = width * height;
+        if ((width - 1) * (height - 1) > 32) {
+            throw new IllegalArgumentException("the board is too large for a tablebase");
+        }
+
+        int nrHorizontal = (height - 2) * (width - 1);
+        int nrVertical = (height - 1) * (width - 2);
+        wallHorizontal = new boolean[nrHorizontal + nrVertical];
+        wallSlot = new int[nrHorizontal + nrVertical];
+        for (int k = 0; k < wallSlot.length; k++) {
+            wallHorizontal[k] = k < nrHorizontal;
+            wallSlot[k] = k < nrHorizontal ? k
+                    : ((k - nrHorizontal) / (width - 2)) * (width - 1) + (k - nrHorizontal) % (width - 2);
+        }
+
+        keys = new long[this.maxWallsLeft + 1][];
+        values = new byte[this.maxWallsLeft + 1][];
+    }
+
+    /*
+     * Solves all positions, with the given number of threads, and returns
+     * the number of draws found.
+     */
+    public int generate(int threads) {
+        List<List<Long>> structures = new ArrayList<List<Long>>();
+        for (int n = 0; n <= 2 * wallsPerPlayer; n++) {
+            structures.add(new ArrayList<Long>());
+        }
+        enumerate(new WallStructure(width, height), 0, 0, structures);
+        for (int k = 0; k <= maxWallsLeft; k++) {
+            List<Long> list = structures.get(2 * wallsPerPlayer - k);
+            keys[k] = new long[list.size()];
+            for (int i = 0; i < keys[k].length; i++) {
+                keys[k][i] = list.get(i);
+            }
+            Arrays.sort(keys[k]);
+            values[k] = new byte[keys[k].length * Tablebase.splits(k, wallsPerPlayer) * 2 * cells * cells];
+            solveAll(k, threads);
+        }
+        return draws.get();
+    }
+
+    // collects every set of walls that do not intersect, by size
+    private void enumerate(WallStructure walls, int from, int size, List<List<Long>> structures) {
+        structures.get(size).add(Tablebase.key(walls));
+        if (size == 2 * wallsPerPlayer) {
+            return;
+        }
+        for (int w = from; w < wallSlot.length; w++) {
+            if (!walls.intersects(wallHorizontal[w], wallSlot[w])) {
+                walls.addWall(wallHorizontal[w], wallSlot[w]);
+                enumerate(walls, w + 1, size + 1, structures);
+                walls.removeWall(wallHorizontal[w], wallSlot[w]);
+            }
+        }
+    }
+
+    private void solveAll(final int k, int threads) {
+        final AtomicInteger next = new AtomicInteger();
+        Thread[] workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("tablebase-" + i) {
+                public void run() {
+                    Solver solver = new Solver();
+                    for (int s = next.getAndIncrement(); s < keys[k].length; s = next.getAndIncrement()) {
+                        solver.solve(k, s);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int offset(int k, int s, int split) {
+        return ((s * Tablebase.splits(k, wallsPerPlayer) + split) * 2) * cells * cells;
+    }
+
+    private WallStructure structure(long key) {
+        WallStructure walls = new WallStructure(width, height);
+        for (int w = 0; w < wallSlot.length; w++) {
+            long mask = wallHorizontal[w] ? key : key >>> 32;
+            if ((mask & 1L << wallSlot[w]) != 0) {
+                walls.addWall(wallHorizontal[w], wallSlot[w]);
+            }
+        }
+        return walls;
+    }
+
+    public void write(String file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(wallsPerPlayer);
+            out.writeInt(maxWallsLeft);
+            for (int k = 1; k <= maxWallsLeft; k++) {
+                out.writeInt(keys[k].length);
+                for (int i = 0; i < keys[k].length; i++) {
+                    out.writeLong(keys[k][i]);
+                }
+            }
+            for (int k = 1; k <= maxWallsLeft; k++) {
+                out.write(values[k]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /*
+     * One thread's working space: the positions of one structure and split
+     * are indexed (side * cells + pawn 0) * cells + pawn 1.
+     */
+    private class Solver {
+
+        private final int[][] steps = new int[cells][4];
+        private final int[] nrSteps = new int[cells];
+        private final int[] children = new int[wallSlot.length];
+        // the best a wall does for each position: the quickest loss it leads to, the slowest win
+        private final int[] wallLoss = new int[2 * cells * cells];
+        private final int[] wallWin = new int[2 * cells * cells];
+        private final boolean[] wallDraw = new boolean[2 * cells * cells];
+
+        void solve(int k, int s) {
+            WallStructure walls = structure(keys[k][s]);
+            BoardTables tables = new BoardTables(walls);
+            for (int cell = 0; cell < cells; cell++) {
+                int r = cell / width;
+                int c = cell % width;
+                int n = 0;
+                if (tables.moveUpLegal(r, c)) {
+                    steps[cell][n++] = cell + width;
+                }
+                if (tables.moveDownLegal(r, c)) {
+                    steps[cell][n++] = cell - width;
+                }
+                if (tables.moveLeftLegal(r, c)) {
+                    steps[cell][n++] = cell - 1;
+                }
+                if (tables.moveRightLegal(r, c)) {
+                    steps[cell][n++] = cell + 1;
+                }
+                nrSteps[cell] = n;
+            }
+            if (k > 0) {
+                for (int w = 0; w < wallSlot.length; w++) {
+                    if (walls.intersects(wallHorizontal[w], wallSlot[w])) {
+                        children[w] = -1;
+                    }
+                    else {
+                        walls.addWall(wallHorizontal[w], wallSlot[w]);
+                        children[w] = Arrays.binarySearch(keys[k - 1], Tablebase.key(walls));
+                        walls.removeWall(wallHorizontal[w], wallSlot[w]);
+                    }
+                }
+            }
+            int first = Math.max(0, k - wallsPerPlayer);
+            for (int split = 0; split < Tablebase.splits(k, wallsPerPlayer); split++) {
+                solve(k, s, split, first + split, tables);
+            }
+        }
+
+        private void solve(int k, int s, int split, int left0, BoardTables tables) {
+            byte[] v = values[k];
+            int base = offset(k, s, split);
+            int[] left = {left0, k - left0};
+            int maxWallPlies = -1;
+            int undecided = 0;
+            for (int side = 0; side < 2; side++) {
+                for (int p0 = 0; p0 < cells; p0++) {
+                    for (int p1 = 0; p1 < cells; p1++) {
+                        int i = (side * cells + p0) * cells + p1;
+                        int own = side == 0 ? tables.distanceToTop[p0] : tables.distanceToBottom[p1];
+                        int opponent = side == 0 ? tables.distanceToBottom[p1] : tables.distanceToTop[p0];
+                        if (own < 0 || opponent < 0 || own == 0) {
+                            // no path, or the player to move has already won
+                            v[base + i] = (byte) Tablebase.INVALID;
+                        }
+                        else if (opponent == 0) {
+                            // lost: the opponent has just arrived
+                            v[base + i] = 1;
+                        }
+                        else if (k == 0) {
+                            v[base + i] = (byte) (1 + (own <= opponent ? 2 * own - 1 : 2 * opponent));
+                        }
+                        else {
+                            v[base + i] = (byte) Tablebase.DRAW;
+                            undecided++;
+                            maxWallPlies = Math.max(maxWallPlies, summarizeWalls(k, split, left, side, p0, p1, i));
+                        }
+                    }
+                }
+            }
+
+            for (int n = 1; undecided > 0 && n <= MAX_PLIES; n++) {
+                int settled = 0;
+                for (int i = 0; i < 2 * cells * cells; i++) {
+                    if ((v[base + i] & 0xFF) != Tablebase.DRAW) {
+                        continue;
+                    }
+                    int side = i / (cells * cells);
+                    int p0 = i / cells % cells;
+                    int p1 = i % cells;
+                    int moving = side == 0 ? p0 : p1;
+                    boolean win = wallLoss[i] <= n - 1;
+                    boolean allWins = !wallDraw[i] && wallLoss[i] == Integer.MAX_VALUE && wallWin[i] <= n - 1;
+                    for (int j = 0; j < nrSteps[moving] && !win; j++) {
+                        int to = steps[moving][j];
+                        int child = ((1 - side) * cells + (side == 0 ? to : p0)) * cells + (side == 0 ? p1 : to);
+                        int cv = v[base + child] & 0xFF;
+                        int plies = cv - 1;
+                        if (cv == Tablebase.DRAW || plies > n - 1) {
+                            // not settled before this round
+                            allWins = false;
+                        }
+                        else if ((plies & 1) == 0) {
+                            win = true;
+                        }
+                    }
+                    if (win || allWins) {
+                        // a win or loss in n plies; a win needs n odd, a loss n even
+                        v[base + i] = (byte) (n + 1);
+                        settled++;
+                    }
+                }
+                undecided -= settled;
+                if (settled == 0 && n > maxWallPlies + 1) {
+                    break;
+                }
+            }
+            draws.addAndGet(undecided);
+        }
+
+        /*
+         * Looks up where each wall leads from the position, in the solved
+         * positions with one wall less left, and returns the largest number
+         * of plies among them.
+         */
+        private int summarizeWalls(int k, int split, int[] left, int side, int p0, int p1, int i) {
+            wallLoss[i] = Integer.MAX_VALUE;
+            wallWin[i] = -1;
+            wallDraw[i] = false;
+            if (left[side] == 0) {
+                return -1;
+            }
+            int childSplit = left[0] - (side == 0 ? 1 : 0) - Math.max(0, k - 1 - wallsPerPlayer);
+            int max = -1;
+            for (int w = 0; w < wallSlot.length; w++) {
+                if (children[w] < 0) {
+                    continue;
+                }
+                int cv = values[k - 1][offset(k - 1, children[w], childSplit) + ((1 - side) * cells + p0) * cells + p1] & 0xFF;
+                if (cv == Tablebase.INVALID) {
+                    // the wall would take away a path
+                    continue;
+                }
+                if (cv == Tablebase.DRAW) {
+                    wallDraw[i] = true;
+                    continue;
+                }
+                int plies = cv - 1;
+                if ((plies & 1) == 0) {
+                    wallLoss[i] = Math.min(wallLoss[i], plies);
+                }
+                else {
+                    wallWin[i] = Math.max(wallWin[i], plies);
+                }
+                max = Math.max(max, plies);
+            }
+            return max;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java quoridor.TablebaseGenerator file [maxWallsLeft [threads]]");
+            return;
+        }
+        int maxWallsLeft = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_WALLS_LEFT;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        TablebaseGenerator generator = new TablebaseGenerator(maxWallsLeft);
+        int draws = generator.generate(threads);
+        generator.write(args[0]);
+        System.out.printf("Solved up to %d walls left in %.1f s with %d threads, %d draws%n",
+                generator.maxWallsLeft, (System.nanoTime() - start) / 1e9, threads, draws);
+    }
+}
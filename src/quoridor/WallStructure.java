@@ -9,50 +9,185 @@ import java.util.Set;
  */
 public class WallStructure {
 
-    Set<Wall> walls;
-    int hashCode = 0;
+    /*
+     * Every wall is identified by the grid point at its centre. A horizontal
+     * wall (r,c) is centred on point (r-1,c) and a vertical wall (r,c) on
+     * point (r,c-1). With (height-1)*(width-1) points per orientation, the
+     * whole structure fits in one long per orientation.
+     */
+    long horizontal;
+    long vertical;
+    int width;
+    int height;
 
-    public WallStructure() {
-        walls = new HashSet();
+    // Zobrist key of the walls, updated with every wall added or removed
+    long key;
+
+    public WallStructure(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public WallStructure(WallStructure ws) {
+        horizontal = ws.horizontal;
+        vertical = ws.vertical;
+        width = ws.width;
+        height = ws.height;
+        key = ws.key;
+    }
+
+    int slot(Wall w) {
+        if (w.isHorizontal()) {
+            return (w.getStartRow() - 1) * (width - 1) + w.getStartCol();
+        }
+        else {
+            return w.getStartRow() * (width - 1) + w.getStartCol() - 1;
+        }
     }
 
     public void addWall(Wall w) {
-        walls.add(w);
-        int h = w.hashCode();
-        hashCode+= h*h;
+        addWall(w.isHorizontal(), slot(w));
+    }
+
+    public void removeWall(Wall w) {
+        removeWall(w.isHorizontal(), slot(w));
+    }
+
+    /*
+     * Slot versions of addWall and removeWall, for the search, which keeps
+     * its walls as move codes rather than Wall objects.
+     */
+    public void addWall(boolean isHorizontal, int p) {
+        if (isHorizontal) {
+            horizontal |= 1L << p;
+            key ^= Zobrist.horizontalWall[p];
+        }
+        else {
+            vertical |= 1L << p;
+            key ^= Zobrist.verticalWall[p];
+        }
+    }
+
+    public void removeWall(boolean isHorizontal, int p) {
+        if (isHorizontal) {
+            horizontal &= ~(1L << p);
+            key ^= Zobrist.horizontalWall[p];
+        }
+        else {
+            vertical &= ~(1L << p);
+            key ^= Zobrist.verticalWall[p];
+        }
+    }
+
+    public long key() {
+        return key;
+    }
+
+    public boolean contains(Wall w) {
+        long mask = w.isHorizontal() ? horizontal : vertical;
+        return (mask & 1L << slot(w)) != 0;
     }
 
+    public long getHorizontalSlots() {
+        return horizontal;
+    }
+
+    public long getVerticalSlots() {
+        return vertical;
+    }
+
+    public int size() {
+        return Long.bitCount(horizontal) + Long.bitCount(vertical);
+    }
+
+    /*
+     * Builds the set of walls from the slot masks. Only meant for the display
+     * and other code outside the search; the search works on the masks.
+     */
     public Set<Wall> getWalls(){
+        Set<Wall> walls = new HashSet<Wall>();
+        for (long m = horizontal; m != 0; m &= m - 1) {
+            int p = Long.numberOfTrailingZeros(m);
+            walls.add(new Wall(p / (width - 1) + 1, p % (width - 1), true));
+        }
+        for (long m = vertical; m != 0; m &= m - 1) {
+            int p = Long.numberOfTrailingZeros(m);
+            walls.add(new Wall(p / (width - 1), p % (width - 1) + 1, false));
+        }
         return walls;
     }
-    
+
     public int hashCode() {
-        return hashCode;
+        return (int) (key ^ key >>> 32);
     }
-       
+
     public boolean intersects(Wall wall){
-        for (Wall w1 : walls) {
-            if (wall.intersects(w1)) {
-                return true;
-            }
+        return intersects(wall.isHorizontal(), slot(wall));
+    }
+
+    public boolean intersects(boolean isHorizontal, int p){
+        long bit = 1L << p;
+        if (((horizontal | vertical) & bit) != 0) {
+            // a wall with the same centre, either overlapping or crossing
+            return true;
+        }
+        int c = p % (width - 1);
+        int r = p / (width - 1);
+        if (isHorizontal) {
+            return (c > 0 && (horizontal & bit >>> 1) != 0)
+                    || (c < width - 2 && (horizontal & bit << 1) != 0);
+        }
+        else {
+            return (r > 0 && (vertical & bit >>> (width - 1)) != 0)
+                    || (r < height - 2 && (vertical & bit << (width - 1)) != 0);
         }
-        return false;
     }
-    
+
+    /*
+     * Whether a wall in slot p could close off part of the board. Cells
+     * only get separated when walls and borders form a closed line, so the
+     * new wall must touch what is already there in at least two of its
+     * three points: its ends and its centre. One that touches less hangs
+     * free and leaves every cell reachable.
+     */
+    public boolean canSeparate(boolean isHorizontal, int p) {
+        // the centre as a grid point, counted from the bottom left corner
+        int y = p / (width - 1) + 1;
+        int x = p % (width - 1) + 1;
+        int touching = touches(y, x) ? 1 : 0;
+        if (isHorizontal) {
+            touching += (touches(y, x - 1) ? 1 : 0) + (touches(y, x + 1) ? 1 : 0);
+        }
+        else {
+            touching += (touches(y - 1, x) ? 1 : 0) + (touches(y + 1, x) ? 1 : 0);
+        }
+        return touching >= 2;
+    }
+
+    // whether grid point (y, x) lies on the border or on a wall
+    private boolean touches(int y, int x) {
+        if (y == 0 || y == height || x == 0 || x == width) {
+            return true;
+        }
+        int p = (y - 1) * (width - 1) + x - 1;
+        if (((horizontal | vertical) & 1L << p) != 0) {
+            return true;
+        }
+        return (x > 1 && (horizontal & 1L << (p - 1)) != 0)
+                || (x < width - 1 && (horizontal & 1L << (p + 1)) != 0)
+                || (y > 1 && (vertical & 1L << (p - (width - 1))) != 0)
+                || (y < height - 1 && (vertical & 1L << (p + (width - 1))) != 0);
+    }
+
     public String toString(){
-        return walls.toString();
+        return getWalls().toString();
     }
-    
+
     public boolean equals(Object o){
         if(!(o instanceof WallStructure))
             return false;
         WallStructure ws = (WallStructure)o;
-        if(walls.size() != ws.walls.size())
-            return false;
-        for(Wall wall:walls){
-            if(!ws.walls.contains(wall))
-                return false;
-        }
-        return true;
+        return horizontal == ws.horizontal && vertical == ws.vertical
+                && width == ws.width && height == ws.height;
     }
 }
@@ -0,0 +1,45 @@
+package quoridor;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing. The key of a state is the XOR of the keys
+ * of its walls, both pawn positions and both wall counts, so every move can
+ * update it with one or two XORs. The seed is fixed, which keeps keys stable
+ * from one run to the next.
+ *
+ * @author steven
+ */
+final class Zobrist {
+
+    // large enough for the slot masks in WallStructure and a 9x9 board
+    static final int MAX_SLOTS = 64;
+    static final int MAX_CELLS = 128;
+    static final int MAX_WALLS_LEFT = 32;
+
+    static final long[] horizontalWall = new long[MAX_SLOTS];
+    static final long[] verticalWall = new long[MAX_SLOTS];
+    static final long[][] pawn = new long[2][MAX_CELLS];
+    static final long[][] wallsLeft = new long[2][MAX_WALLS_LEFT + 1];
+    static final long sideToMove;
+
+    static {
+        Random random = new Random(0x51A7C0DEL);
+        for (int i = 0; i < MAX_SLOTS; i++) {
+            horizontalWall[i] = random.nextLong();
+            verticalWall[i] = random.nextLong();
+        }
+        for (int p = 0; p < 2; p++) {
+            for (int i = 0; i < MAX_CELLS; i++) {
+                pawn[p][i] = random.nextLong();
+            }
+            for (int i = 0; i <= MAX_WALLS_LEFT; i++) {
+                wallsLeft[p][i] = random.nextLong();
+            }
+        }
+        sideToMove = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+}
@@ -0,0 +1,69 @@
+package tournament;
+
+import players.QuoridorPlayer;
+import quoridor.GameState2P;
+import quoridor.Quoridor;
+
+/**
+ * One game between two players without a display. Unlike Quoridor, which
+ * lets each player move from the previous player's callback on a new
+ * thread, it asks the players for their moves in turn on the calling
+ * thread, so a tournament can run many matches side by side.
+ *
+ * @author steven
+ */
+public class Match extends Quoridor {
+
+    public static final int WINNER_NONE = -1;
+
+    private GameState2P current;
+    private QuoridorPlayer[] players;
+    private boolean moved;
+    private int plies;
+
+    public Match(GameState2P state) {
+        super(state);
+        current = state;
+    }
+
+    public void setPlayers(QuoridorPlayer player0, QuoridorPlayer player1) {
+        players = new QuoridorPlayer[]{player0, player1};
+    }
+
+    /*
+     * Plays the game out, the side to move first, and returns the index of
+     * the winner, or WINNER_NONE when neither has won after maxPlies.
+     */
+    public int play(int side, int maxPlies) {
+        while (!current.isGameOver() && plies < maxPlies) {
+            moved = false;
+            players[side].chooseMove();
+            if (!moved) {
+                throw new IllegalStateException("player " + side + " did not move");
+            }
+            plies++;
+            side = 1 - side;
+        }
+        if (!current.isGameOver()) {
+            return WINNER_NONE;
+        }
+        return current.getPlayerRow(0) == current.getHeight() - 1 ? 0 : 1;
+    }
+
+    @Override
+    public void doMove(int playerIndex, GameState2P newState) {
+        current = newState;
+        for (int i = 0; i < 2; i++) {
+            players[i].setState(newState);
+        }
+        moved = true;
+    }
+
+    public int getPlies() {
+        return plies;
+    }
+
+    public GameState2P getState() {
+        return current;
+    }
+}
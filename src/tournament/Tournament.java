@@ -0,0 +1,301 @@
+package tournament;
+
+import moves.MoveCode;
+import players.QuoridorPlayer;
+import players.TranspositionPlayer;
+import quoridor.GameState2P;
+import quoridor.MoveGenerator;
+import quoridor.Quoridor;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays a match of many headless games between two player classes, with
+ * a fixed time per move, on several threads at once, and reports the Elo
+ * difference with its 95% confidence interval and each player's mean
+ * search depth and nodes per second.
+ *
+ * The engines are deterministic given the time they get, so every game
+ * starts from a random opening of a few pawn moves and walls across a
+ * path, and each opening is played twice, with either player moving
+ * first. A game still going after MAX_PLIES is a draw.
+ *
+ * Every game is written to the CSV file, if given, as soon as it ends.
+ * The players are quiet: they do not log their searches.
+ *
+ * Usage: java tournament.Tournament playerA playerB [games [moveMillis [threads [csvFile]]]]
+ * where a player is a QuoridorPlayer class, such as TranspositionPlayer
+ * or players.MonteCarloPlayer. The board is set with the properties of
+ * GameState2P.fromProperties; players search with one thread each unless
+ * quoridor.searchThreads says otherwise.
+ *
+ * @author steven
+ */
+public class Tournament {
+
+    public static final int DEFAULT_GAMES = 100;
+    public static final int DEFAULT_MOVE_MILLIS = 100;
+
+    public static final int OPENING_PLIES = 4;
+    public static final int MAX_PLIES = 500;
+
+    private static final String CSV_HEADER = "game,opening,player0,player1,result,plies,"
+            + "depth0,nodesPerSecond0,depth1,nodesPerSecond1,seconds";
+
+    private final List<Class<? extends QuoridorPlayer>> classes = new ArrayList<Class<? extends QuoridorPlayer>>();
+    private final long moveTime;
+    private final long seed;
+    private PrintWriter csv;
+    // where the progress reports go
+    private PrintStream out = System.out;
+
+    // from playerA's point of view; stats are indexed by player A = 0, B = 1
+    private int wins;
+    private int draws;
+    private int losses;
+    private final Stats[] stats = {new Stats(), new Stats()};
+
+    public Tournament(Class<? extends QuoridorPlayer> playerA, Class<? extends QuoridorPlayer> playerB,
+                      long moveTime, TimeUnit unit, long seed) {
+        classes.add(playerA);
+        classes.add(playerB);
+        this.moveTime = unit.toNanos(moveTime);
+        this.seed = seed;
+    }
+
+    public void setCsv(PrintWriter csv) {
+        this.csv = csv;
+        csv.println(CSV_HEADER);
+        csv.flush();
+    }
+
+    public void setReport(PrintStream out) {
+        this.out = out;
+    }
+
+    // plays the games on the given number of threads
+    public void run(final int games, int threads) {
+        final AtomicInteger next = new AtomicInteger();
+        final long start = System.nanoTime();
+        Thread[] workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("tournament-" + i) {
+                public void run() {
+                    for (int g = next.getAndIncrement(); g < games; g = next.getAndIncrement()) {
+                        int played = play(g);
+                        if (played % Math.max(1, games / 10) == 0) {
+                            out.printf("%d/%d games, %.0f s: %s%n", played, games, (System.nanoTime() - start) / 1e9, score());
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * Plays game g: opening g / 2, with player A moving first in the even
+     * games. Returns the number of games played so far.
+     */
+    private int play(int g) {
+        int opening = g / 2;
+        int first = g & 1;
+        GameState2P state = randomOpening(new Random(seed + opening));
+        Match match = new Match(state);
+        QuoridorPlayer[] players = new QuoridorPlayer[2];
+        for (int side = 0; side < 2; side++) {
+            // side 0 is player A in even games
+            players[side] = newPlayer(classes.get(side ^ first), state, side, match);
+            players[side].setMoveTime(moveTime, TimeUnit.NANOSECONDS);
+            players[side].setQuiet(true);
+        }
+        match.setPlayers(players[0], players[1]);
+
+        long start = System.nanoTime();
+        int winner;
+        try {
+            winner = match.play(OPENING_PLIES % 2, MAX_PLIES);
+        } catch (RuntimeException e) {
+            // the player that failed to move loses
+            e.printStackTrace();
+            winner = 1 - (OPENING_PLIES + match.getPlies()) % 2;
+        } finally {
+            for (int side = 0; side < 2; side++) {
+                if (players[side] instanceof TranspositionPlayer) {
+                    ((TranspositionPlayer) players[side]).setPondering(false);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        synchronized (this) {
+            if (winner == Match.WINNER_NONE) {
+                draws++;
+            }
+            else if ((winner ^ first) == 0) {
+                wins++;
+            }
+            else {
+                losses++;
+            }
+            for (int side = 0; side < 2; side++) {
+                stats[side ^ first].add(players[side]);
+            }
+            if (csv != null) {
+                csv.printf("%d,%d,%s,%s,%s,%d,%.2f,%.0f,%.2f,%.0f,%.2f%n", g, opening,
+                        classes.get(first).getSimpleName(), classes.get(1 - first).getSimpleName(),
+                        winner == Match.WINNER_NONE ? "1/2-1/2" : winner == 0 ? "1-0" : "0-1", match.getPlies(),
+                        Stats.meanDepth(players[0]), Stats.nodesPerSecond(players[0]),
+                        Stats.meanDepth(players[1]), Stats.nodesPerSecond(players[1]), seconds);
+                csv.flush();
+            }
+            return wins + draws + losses;
+        }
+    }
+
+    /*
+     * The opening: random moves for both players, each a pawn move or a
+     * wall across the opponent's shortest path.
+     */
+    private static GameState2P randomOpening(Random random) {
+        GameState2P state = GameState2P.fromProperties();
+        MoveGenerator generator = new MoveGenerator();
+        int[] moves = new int[MoveCode.MAX_CODES];
+        for (int ply = 0; ply < OPENING_PLIES; ply++) {
+            int side = ply % 2;
+            generator.reset(state, side, MoveCode.NONE);
+            int n = 0;
+            for (int m = generator.next(); m != MoveCode.NONE && !generator.isQuiet(m); m = generator.next()) {
+                moves[n++] = m;
+            }
+            state = MoveCode.decode(moves[random.nextInt(n)], side, state.getWidth()).doMove(state);
+        }
+        return state;
+    }
+
+    private QuoridorPlayer newPlayer(Class<? extends QuoridorPlayer> c, GameState2P state, int index, Quoridor game) {
+        try {
+            Constructor<? extends QuoridorPlayer> constructor = c.getConstructor(GameState2P.class, int.class, Quoridor.class);
+            return constructor.newInstance(state, index, game);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("cannot create a " + c.getName(), e);
+        }
+    }
+
+    // player A's score so far and the Elo difference it gives
+    public synchronized String score() {
+        int games = wins + draws + losses;
+        if (games == 0) {
+            return "no games";
+        }
+        double score = (wins + 0.5 * draws) / games;
+        // the standard error of the mean score, from the spread of the game results
+        double variance = (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+        double margin = 1.96 * Math.sqrt(variance / games);
+        return String.format("%s vs %s: +%d =%d -%d, score %.1f%%, Elo %+.0f (95%% %+.0f to %+.0f)",
+                classes.get(0).getSimpleName(), classes.get(1).getSimpleName(), wins, draws, losses, 100 * score,
+                elo(score, games), elo(score - margin, games), elo(score + margin, games));
+    }
+
+    /*
+     * The Elo difference that gives the expected score. It is infinite at
+     * 0 and 1, so the score is kept half a game from either end.
+     */
+    static double elo(double score, int games) {
+        score = Math.max(0.5 / games, Math.min(1 - 0.5 / games, score));
+        return 400 * Math.log10(score / (1 - score));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(score());
+        for (int i = 0; i < 2; i++) {
+            sb.append(String.format("%n%s: %s", classes.get(i).getSimpleName(), stats[i]));
+        }
+        return sb.toString();
+    }
+
+    // the search totals of one player class over all its games
+    private static class Stats {
+
+        private long searches;
+        private long totalDepth;
+        private long totalNodes;
+        private long searchTime;
+
+        void add(QuoridorPlayer player) {
+            searches += player.getSearches();
+            totalDepth += player.getTotalDepth();
+            totalNodes += player.getTotalNodes();
+            searchTime += player.getSearchTime();
+        }
+
+        static double meanDepth(QuoridorPlayer player) {
+            return player.getSearches() == 0 ? 0 : (double) player.getTotalDepth() / player.getSearches();
+        }
+
+        static double nodesPerSecond(QuoridorPlayer player) {
+            return player.getSearchTime() == 0 ? 0 : player.getTotalNodes() * 1e9 / player.getSearchTime();
+        }
+
+        public String toString() {
+            return String.format("%d moves, mean depth %.2f, %.0f nodes/s, %.1f ms per move",
+                    searches, searches == 0 ? 0 : (double) totalDepth / searches,
+                    searchTime == 0 ? 0 : totalNodes * 1e9 / searchTime, searches == 0 ? 0 : searchTime / 1e6 / searches);
+        }
+    }
+
+    private static Class<? extends QuoridorPlayer> playerClass(String name) {
+        try {
+            return Class.forName(name.indexOf('.') < 0 ? "players." + name : name).asSubclass(QuoridorPlayer.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("unknown player " + name);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java tournament.Tournament playerA playerB [games [moveMillis [threads [csvFile]]]]");
+            return;
+        }
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+        long moveMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MOVE_MILLIS;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        if (System.getProperty("quoridor.searchThreads") == null) {
+            System.setProperty("quoridor.searchThreads", "1");
+        }
+        Tournament tournament = new Tournament(playerClass(args[0]), playerClass(args[1]),
+                moveMillis, TimeUnit.MILLISECONDS, Long.getLong("quoridor.tournamentSeed", 1));
+        PrintWriter csv = null;
+        if (args.length > 5) {
+            csv = new PrintWriter(new FileWriter(args[5]));
+            tournament.setCsv(csv);
+        }
+        long start = System.nanoTime();
+        try {
+            tournament.run(games, threads);
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+        }
+        System.out.printf("%d games in %.1f s with %d threads, %d ms per move%n%s%n",
+                games, (System.nanoTime() - start) / 1e9, threads, moveMillis, tournament);
+    }
+}
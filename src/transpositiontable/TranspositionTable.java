@@ -1,23 +1,199 @@
 package transpositiontable;
 
-import quoridor.GameState2P;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Fixed-size transposition table held in a single long array, so it costs
+ * no objects per entry. Every entry takes two longs: the key XORed with the
+ * data, and the data itself, which packs the score, search depth, bound type,
+ * best move and the age of the search that stored it. A probe only accepts an
+ * entry when the two longs XOR back to the probed key.
+ *
+ * Entries are grouped in buckets of four (one 64-byte cache line). Within a
+ * bucket an entry for the same position is reused; otherwise the entry left
+ * by an older search, or else the shallowest one, is replaced.
+ *
+ * Any number of search threads can share a table without locking. Two
+ * threads writing the same entry at once, or a thread reading an entry
+ * while another writes it, can leave or see the key long of one store with
+ * the data long of another. Such a pair no longer XORs back to either key,
+ * so the probe treats it as a miss rather than returning wrong data.
+ */
 public class TranspositionTable {
 
-    private TranspositionEntry[] transpositionTable;
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    // bound types
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+    public static final int EXACT = 3;
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int BYTES_PER_BUCKET = BUCKET_SIZE * 2 * 8;
+
+    /*
+     * Layout of the data long: bits 0-15 score, 16-23 depth, 24-25 bound,
+     * 26-31 age, 32-63 best move. The bound is never zero for a stored
+     * entry, so a data value of zero marks an empty slot.
+     */
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int AGE_SHIFT = 26;
+    private static final int MOVE_SHIFT = 32;
+    private static final int AGE_MASK = 63;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int age;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
 
     public TranspositionTable() {
-        this.transpositionTable = new TranspositionEntry[(int) 10e6];
+        this(DEFAULT_MEGABYTES);
+    }
+
+    public TranspositionTable(int megabytes) {
+        long buckets = Long.highestOneBit(Math.max(1, ((long) megabytes << 20) / BYTES_PER_BUCKET));
+        // stay within the maximum array length
+        buckets = Math.min(buckets, 1L << 26);
+        table = new long[(int) buckets * BUCKET_SIZE * 2];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /*
+     * Starts a new search, so that entries from earlier searches are
+     * replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    /*
+     * Returns the packed data stored for the key, or 0 if there is none.
+     * Use score, depth, bound and move to unpack it.
+     */
+    public long probe(long key) {
+        probes.increment();
+        int base = ((int) key & bucketMask) * BUCKET_SIZE * 2;
+        for (int i = base; i < base + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            // the data is read first and checked against the key read after it
+            if (data != 0 && (table[i] ^ data) == key) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    public void store(long key, int score, int depth, int bound, int move) {
+        int age = this.age;
+        int base = ((int) key & bucketMask) * BUCKET_SIZE * 2;
+        int victim = base;
+        int victimValue = Integer.MAX_VALUE;
+        for (int i = base; i < base + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            if (data == 0) {
+                victim = i;
+                break;
+            }
+            if ((table[i] ^ data) == key) {
+                // same position: keep a deeper result from this search
+                if (depth < depth(data) && bound != EXACT && age(data) == age) {
+                    return;
+                }
+                if (move == 0) {
+                    move = move(data);
+                }
+                victim = i;
+                break;
+            }
+            int value = depth(data) - (age(data) == age ? 0 : 256);
+            if (value < victimValue) {
+                victim = i;
+                victimValue = value;
+            }
+        }
+        long data = (score & 0xFFFFL)
+                | (long) Math.min(depth, 255) << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | (long) age << AGE_SHIFT
+                | (long) move << MOVE_SHIFT;
+        table[victim] = key ^ data;
+        table[victim + 1] = data;
+        stores.increment();
+    }
+
+    public static int score(long data) {
+        return (short) data;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 255;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    public static int move(long data) {
+        return (int) (data >>> MOVE_SHIFT);
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    public int capacity() {
+        return table.length / 2;
+    }
+
+    /*
+     * Fraction of entries, in permille, written by the current search,
+     * estimated from the first thousand entries.
+     */
+    public int fillPermille() {
+        int age = this.age;
+        int sample = Math.min(1000, capacity());
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long data = table[2 * i + 1];
+            if (data != 0 && age(data) == age) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
     }
 
-    public void addEntry(GameState2P gameState2P, double minimax, int depth) {
-        TranspositionEntry transpositionEntry = new TranspositionEntry(gameState2P, minimax, depth);
-        int index = transpositionEntry.getGameState2P().hashCode() % transpositionTable.length;
-        this.transpositionTable[index] = transpositionEntry;
+    public double hitRate() {
+        long p = getProbes();
+        return p == 0 ? 0 : (double) getHits() / p;
     }
 
-    public TranspositionEntry getEntryFromGameState(GameState2P gameState2P) {
-        int index = gameState2P.hashCode() % transpositionTable.length;
-        return this.transpositionTable[index];
+    public String toString() {
+        return String.format("TT fill: %.1f%% probes: %d hits: %.1f%% stores: %d",
+                fillPermille() / 10.0, getProbes(), 100 * hitRate(), getStores());
     }
 }